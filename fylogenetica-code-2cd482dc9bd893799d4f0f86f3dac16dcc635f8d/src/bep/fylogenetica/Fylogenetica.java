@@ -1,10 +1,14 @@
 package bep.fylogenetica;
 
+import java.util.Arrays;
+
 import javax.swing.SwingUtilities;
 
+import bep.fylogenetica.algorithm.GF2MatrixFactory;
 import bep.fylogenetica.analysis.AnalysisRunner;
 import bep.fylogenetica.gui.MainWindow;
 import bep.fylogenetica.model.MainModel;
+import bep.fylogenetica.model.RuleScheduler;
 
 /**
  * The main class for the Fylogenetica application.
@@ -18,6 +22,27 @@ public class Fylogenetica {
 	 */
 	public static void main(String[] args) {
 		
+		// the --engine and --rule-statistics options may be given before the other options
+		while (args.length >= 2 && (args[0].equals("--engine") || args[0].equals("--rule-statistics"))) {
+			if (args[0].equals("--rule-statistics")) {
+				System.setProperty(RuleScheduler.FILE_PROPERTY, args[1]);
+				System.out.println("Rule statistics file: " + args[1]);
+				args = Arrays.copyOfRange(args, 2, args.length);
+				continue;
+			}
+			try {
+				GF2MatrixFactory.getEngine(args[1]);
+			} catch (IllegalArgumentException e) {
+				if (!args[1].equalsIgnoreCase("auto")) {
+					System.out.println(e.getMessage());
+					return;
+				}
+			}
+			System.setProperty(GF2MatrixFactory.ENGINE_PROPERTY, args[1]);
+			System.out.println("Matrix engine: " + args[1]);
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		
 		if (args.length == 0) {
 			new Fylogenetica(false);
 			return;
@@ -43,14 +68,23 @@ public class Fylogenetica {
 		System.out.println("Fylogenetica - an application that implements a new algorithm for\n" +
 				"reconstructing fylogenetic trees and networks from quartets\n" +
 				"\n" +
-				"Usage: java -jar Fylogenetica.jar [option]\n" +
+				"Usage: java -jar Fylogenetica.jar [--engine name] [--rule-statistics file] [option]\n" +
 				"\n" +
 				"Possible options:\n" +
 				"    --gui         Use the interactive GUI (default)\n" +
 				"    --analysis    Run the analysis scripts\n" +
 				"    --help        Show this help message\n" +
 				"\n" +
-				"If no options are given, the interactive GUI is shown.");
+				"If no options are given, the interactive GUI is shown.\n" +
+				"\n" +
+				"The --engine switch selects the matrix engine: dense, sparse, presolved,\n" +
+				"ordered or auto (default). This can also be done with the system property\n" +
+				GF2MatrixFactory.ENGINE_PROPERTY + ".\n" +
+				"\n" +
+				"The --rule-statistics switch gives a file in which the statistics of the\n" +
+				"inference rules are kept between runs, so that the rules that worked best\n" +
+				"are tried first. This can also be done with the system property\n" +
+				RuleScheduler.FILE_PROPERTY + ". By default they are not saved.");
 	}
 
 	/**
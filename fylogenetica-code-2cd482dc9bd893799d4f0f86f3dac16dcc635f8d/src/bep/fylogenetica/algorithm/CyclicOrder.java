@@ -1,18 +1,34 @@
 package bep.fylogenetica.algorithm;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A cyclic order of taxa.
+ * 
+ * <p>The order is stored in an array, together with the inverse array that
+ * contains the position of every taxon. Therefore looking up a position, and
+ * hence determining the orientation of a triple, takes constant time.</p>
  */
 public class CyclicOrder {
 	
 	/**
-	 * This array contains the actual ordering. This array is a permutation
+	 * This array contains the actual ordering: <code>order[p]</code> is the taxon on
+	 * position <code>p</code>. The first {@link #size} elements are a permutation
 	 * of <code>{0, 1, ..., n - 1}</code> where <code>n</code> is the number
 	 * of taxa.
 	 */
-	public ArrayList<Integer> taxa;
+	private int[] order;
+	
+	/**
+	 * The inverse of {@link #order}: <code>position[t]</code> is the position of
+	 * taxon <code>t</code>.
+	 */
+	private int[] position;
+	
+	/**
+	 * The number of taxa in this order.
+	 */
+	private int size;
 	
 	/**
 	 * Creates the unity order (that is, <code>[0, 1, ..., n - 1]</code>) over
@@ -21,10 +37,30 @@ public class CyclicOrder {
 	 * @param taxonCount The number of taxa.
 	 */
 	public CyclicOrder(int taxonCount) {
-		taxa = new ArrayList<>();
+		order = new int[taxonCount];
+		position = new int[taxonCount];
+		size = taxonCount;
 		
 		for (int i = 0; i < taxonCount; i++) {
-			taxa.add(i);
+			order[i] = i;
+			position[i] = i;
+		}
+	}
+	
+	/**
+	 * Creates the given order.
+	 * 
+	 * @param order The taxa in order. This must be a permutation of
+	 * <code>{0, 1, ..., n - 1}</code>. The array is used by the new object,
+	 * so it shouldn't be modified afterwards.
+	 */
+	CyclicOrder(int[] order) {
+		this.order = order;
+		position = new int[order.length];
+		size = order.length;
+		
+		for (int i = 0; i < size; i++) {
+			position[order[i]] = i;
 		}
 	}
 	
@@ -36,27 +72,51 @@ public class CyclicOrder {
 	 * @param other The {@link CyclicOrder} to copy.
 	 */
 	public CyclicOrder(CyclicOrder other) {
-		taxa = new ArrayList<>();
-		
-		for (int i : other.taxa) {
-			taxa.add(i);
-		}
+		changeAll(other);
 	}
 
 	public void changeAll(CyclicOrder c) {
-		taxa = new ArrayList<>();
-		
-		for (int i : c.taxa) {
-			taxa.add(i);
-		}
+		order = Arrays.copyOf(c.order, c.size);
+		position = Arrays.copyOf(c.position, c.size);
+		size = c.size;
+	}
+	
+	/**
+	 * Returns the number of taxa in this order.
+	 * 
+	 * @return The number of taxa.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the taxon on the given position.
+	 * 
+	 * @param index The position, between <code>0</code> (inclusive) and
+	 * {@link #size()} (exclusive).
+	 * @return The taxon on that position.
+	 */
+	public int get(int index) {
+		return order[index];
+	}
+	
+	/**
+	 * Returns the position of the given taxon.
+	 * 
+	 * @param taxon The taxon.
+	 * @return The position of that taxon in this order.
+	 */
+	public int indexOf(int taxon) {
+		return position[taxon];
 	}
 	
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer("[");
 		
-		for (int i = 0; i < taxa.size(); i++) {
-			sb.append(taxa.get(i));
+		for (int i = 0; i < size; i++) {
+			sb.append(order[i]);
 			sb.append(" ");
 		}
 		
@@ -73,49 +133,44 @@ public class CyclicOrder {
 	 * then this method will search in the given vector <code>v</code> where
 	 * <code>i = 3</code> should be placed.</p>
 	 * 
-	 * @param i The number of the taxon. This should be <code>taxa.size()</code>,
+	 * @param i The number of the taxon. This should be {@link #size()},
 	 * but is passed as a parameter for clarity.
 	 * @param v The vector to decide the position with.
 	 * @return whether the cyclic order is no longer cyclic
 	 */
 	public boolean addTaxonBasedOnVector(int i, DenseVector v) {
 		
-		assert i == taxa.size();
+		assert i == size;
 
-		if (taxa.size() < 2) {
-			taxa.add(i);
-			return false;
-		}
-		
-		Triple t;
-		int correctIndex = taxa.size();
+		int correctIndex = size;
 
-		for(int j = 1; j < taxa.size(); j++) {
-			t = new Triple(taxa.get(0), i, taxa.get(j));
-			boolean earlier = v.getElement(t);
-			if(earlier && correctIndex == taxa.size()) {
-				correctIndex = j;
-			}
-			if(!earlier && correctIndex != taxa.size()) {
-				return true;
+		if (size >= 2) {
+			for(int j = 1; j < size; j++) {
+				boolean earlier = v.getElement(new Triple(order[0], i, order[j]));
+				if(earlier && correctIndex == size) {
+					correctIndex = j;
+				}
+				if(!earlier && correctIndex != size) {
+					return true;
+				}
 			}
 		}
 		
-		taxa.add(correctIndex, i);
+		if (size == order.length) {
+			order = Arrays.copyOf(order, Math.max(4, 2 * size));
+			position = Arrays.copyOf(position, order.length);
+		}
+		
+		System.arraycopy(order, correctIndex, order, correctIndex + 1, size - correctIndex);
+		order[correctIndex] = i;
+		size++;
+		
+		for (int p = correctIndex; p < size; p++) {
+			position[order[p]] = p;
+		}
 		
 		return false;
 	}
-	
-	/**
-	 * Searches for a taxon in this cyclic order.
-	 * 
-	 * @param t The taxon.
-	 * @return The index in the {@link #taxa} ArrayList on which this taxon is
-	 * placed, or <code>-1</code> if the taxon isn't present.
-	 */
-	private int searchTaxon(int t) {
-		return taxa.indexOf(t);
-	}
 
 	/**
 	 * Checks whether this order is consistent with a certain vector, by looking
@@ -132,12 +187,16 @@ public class CyclicOrder {
 	public Triple consistentWithVector(DenseVector v) {
 		
 		// loop over all element vectors and see if their values in the vector
-		// correspond to the actual consistency with the triples
-		for (int i = 0; i < v.smartToStupid.length; i++) {
-			boolean shouldBeConsistent = v.getElementOnIndex(i);
-			Triple t = v.indexToTriple(i);
-			if (consistentWithTriple(t) == shouldBeConsistent) {
-				return t;
+		// correspond to the actual consistency with the triples; the indices
+		// are in lexicographic order of the triples (0, i, j)
+		int index = 0;
+		
+		for (int i = 1; i < size - 1; i++) {
+			for (int j = i + 1; j < size; j++) {
+				if (orientation(position[0], position[i], position[j]) == v.getElementOnIndex(index)) {
+					return new Triple(0, i, j);
+				}
+				index++;
 			}
 		}
 		
@@ -145,19 +204,18 @@ public class CyclicOrder {
 	}
 	
 	/**
-	 * Returns whether the given triple is positioned in this order by
-	 * this {@link CyclicOrder}.
+	 * Returns the parity of the permutation that sorts the given (distinct)
+	 * positions. This is <code>false</code> if and only if the positions are in
+	 * cyclic order.
 	 * 
-	 * @param t The triple.
-	 * @return Whether the triple holds for this cyclic order.
+	 * @param p1 The first position.
+	 * @param p2 The second position.
+	 * @param p3 The third position.
+	 * @return <code>true</code> if an odd number of swaps is needed to sort the
+	 * positions, <code>false</code> otherwise (like {@link Triple#makeAscending()}).
 	 */
-	private boolean consistentWithTriple(Triple t) {
-		
-		int p1 = searchTaxon(t.i1);
-		int p2 = searchTaxon(t.i2);
-		int p3 = searchTaxon(t.i3);
-		
-		return new Triple(p1, p2, p3).makeAscending();
+	private static boolean orientation(int p1, int p2, int p3) {
+		return (p1 > p2) ^ (p1 > p3) ^ (p2 > p3);
 	}
 	
 	/**
@@ -166,7 +224,7 @@ public class CyclicOrder {
 	 * <p>The taxa to reverse are indicated by the <code>begin</code> and <code>end</code>
 	 * parameters. The block of taxa starting with the <code>begin</code><sup>th</sup>
 	 * taxon (inclusive) and ending with the <code>end</code><sup>th</sup> taxon
-	 * (inclusive) will be reversed. This "reverse" means that the first element of the
+	 * (exclusive) will be reversed. This "reverse" means that the first element of the
 	 * block of taxa will now be last, the second will now be one-before-last, and so on.</p>
 	 * 
 	 * <p>For example: assume the circle contains the following:
@@ -185,7 +243,8 @@ public class CyclicOrder {
 	 * </pre>
 	 * </p>
 	 * 
-	 * <p>Note: <code>end</code> should be <code>&gt;= begin</code>.</p>
+	 * <p>Note: <code>end</code> should be <code>&gt;= begin</code>. The reversal is
+	 * done in-place, in time linear in the size of the block.</p>
 	 * 
 	 * @param begin The index of the first element of the block of taxa to reverse
 	 * (inclusive).
@@ -194,24 +253,41 @@ public class CyclicOrder {
 	 */
 	public void reverse(int begin, int end) {
 		
-		for (int i = begin; i < end; i++) {
-			moveToIndex(end - 1, i);
+		for (int i = begin, j = end - 1; i < j; i++, j--) {
+			int h = order[i];
+			order[i] = order[j];
+			order[j] = h;
+			
+			position[order[i]] = i;
+			position[order[j]] = j;
 		}
 	}
 	
 	/**
-	 * Moves the taxon on <code>oldIndex</code> and moves it to
-	 * <code>newIndex</code>. This is of course equivalent with removing
-	 * the taxon on <code>oldIndex</code> and re-inserting it on
-	 * <code>newIndex</code>.
+	 * Determines the difference between the encoding of this cyclic order and the
+	 * encoding of the cyclic order after reversing a block of taxa.
 	 * 
-	 * @param oldIndex The index of the taxon to move.
-	 * @param newIndex The new index of the taxon.
+	 * <p>That is, if <code>g</code> is this order after <code>g.reverse(begin, end)</code>,
+	 * then <code>x<sup>g</sup> = x<sup>f</sup> + delta</code>. The element of a triple
+	 * changes if and only if at least two of its taxa are in the block, so this is
+	 * computed without building <code>g</code>, see
+	 * {@link DenseVector#extendReversal(DenseVector, int)}.</p>
+	 * 
+	 * @param begin The index of the first element of the block of taxa to reverse
+	 * (inclusive).
+	 * @param end The index of the last element of the block of taxa to reverse
+	 * (exclusive).
+	 * @return A {@link DenseVector} containing the difference.
 	 */
-	private void moveToIndex(int oldIndex, int newIndex) {
-		Integer taxonToMove = taxa.remove(oldIndex);
+	public DenseVector determineReversalDelta(int begin, int end) {
+		DenseVector delta = new DenseVector(size);
+		DenseVector members = new DenseVector(size);
 		
-		taxa.add(newIndex, taxonToMove);
+		for (int i = begin; i < end; i++) {
+			delta.extendReversal(members, order[i]);
+		}
+		
+		return delta;
 	}
 	
 	/**
@@ -222,13 +298,17 @@ public class CyclicOrder {
 	 * @return A {@link DenseVector} containing the encoding.
 	 */
 	public DenseVector determineVector() {
-		DenseVector xf = new DenseVector(taxa.size());
+		DenseVector xf = new DenseVector(size);
 		
-		for (int i = 0; i < ((taxa.size() - 1) * (taxa.size() - 2) / 2); i++) {
-			Triple t = xf.indexToTriple(i);
-			
-			if (consistentWithTriple(t)) {
-				xf.setElementOnIndex(i, true);
+		// the indices are in lexicographic order of the triples (0, i, j)
+		int index = 0;
+		
+		for (int i = 1; i < size - 1; i++) {
+			for (int j = i + 1; j < size; j++) {
+				if (orientation(position[0], position[i], position[j])) {
+					xf.setElementOnIndex(index, true);
+				}
+				index++;
 			}
 		}
 		
@@ -0,0 +1,212 @@
+package bep.fylogenetica.algorithm;
+
+import java.util.Random;
+
+/**
+ * Searches the space of conforming vectors of a {@link GF2Matrix} for a cyclic vector,
+ * by trying random vectors from that space.
+ *
+ * <p>{@link GF2Matrix#determineConformingVector()} only gives the vector in which all
+ * free variables are zero. If that one isn't cyclic, another vector
+ * <code>v + yW</code> in the space may still be; this class tries random
+ * <code>y</code> until it finds one, or until the time is up.</p>
+ *
+ * <h3>Implementation details</h3>
+ * <p>The vectors are generated 64 at a time, bit-sliced: for every column there is
+ * one <code>long</code> of which bit <code>s</code> is the element of sample
+ * <code>s</code>. For every kernel basis vector, a random <code>long</code> tells for
+ * which samples it is added, so the slice of a column is the element of
+ * <code>v</code> plus the random words of the basis vectors that are non-zero in that
+ * column (see {@link GF2Matrix#getKernelColumns()}).</p>
+ *
+ * <p>With taxon 0 as the anchor, a vector is cyclic if and only if "<code>i</code>
+ * comes before <code>j</code>" is a total order (see {@link DenseVector#determineOrder()}),
+ * that is, if there are no taxa <code>i &lt; j &lt; k</code> such that <code>i</code>
+ * comes before <code>j</code>, <code>j</code> before <code>k</code> and <code>k</code>
+ * before <code>i</code>, or the other way round. Such a cycle is checked for all 64
+ * samples at once, so a number of random subsets <code>{i, j, k}</code> are checked
+ * first to throw away most samples cheaply. Only the samples that survive this are
+ * built as a {@link DenseVector} and checked completely by
+ * {@link DenseVector#determineOrder()}.</p>
+ */
+public class CyclicVectorSampler {
+
+	/**
+	 * The number of random subsets of three taxa to check per taxon, before
+	 * checking a sample completely.
+	 */
+	private static final int SUBSETS_PER_TAXON = 8;
+
+	/**
+	 * The number of taxa.
+	 */
+	private int taxonCount;
+
+	/**
+	 * The conforming vector all samples are based on.
+	 */
+	private DenseVector v;
+
+	/**
+	 * For every column, the kernel basis vectors that are non-zero in that column.
+	 */
+	private long[][] kernel;
+
+	/**
+	 * The number of kernel basis vectors.
+	 */
+	private int dimension;
+
+	/**
+	 * The random generator.
+	 */
+	private Random random;
+
+	/**
+	 * The number of samples that were generated so far.
+	 */
+	private long sampleCount;
+
+	/**
+	 * Creates a sampler for the given matrix.
+	 *
+	 * @param m The matrix. It must be in reduced row-echelon form.
+	 * @param v A vector that conforms to <code>m</code>.
+	 * @param seed The seed for the random generator.
+	 */
+	public CyclicVectorSampler(GF2Matrix m, DenseVector v, long seed) {
+		this.v = v;
+		taxonCount = v.taxonCount;
+		kernel = m.getKernelColumns();
+		random = new Random(seed);
+
+		for (long[] bits : kernel) {
+			for (int w = 0; w < bits.length; w++) {
+				if (bits[w] != 0) {
+					dimension = Math.max(dimension, 64 * w + 64 - Long.numberOfLeadingZeros(bits[w]));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of samples that were generated so far.
+	 * @return The number of samples.
+	 */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Tries random vectors from the space until a cyclic one is found.
+	 *
+	 * @param timeBudget The maximum time to search, in milliseconds.
+	 * @return A cyclic vector that conforms to the matrix, or <code>null</code> if
+	 * none was found within the time budget.
+	 */
+	public DenseVector findCyclicVector(long timeBudget) {
+
+		long deadline = System.currentTimeMillis() + timeBudget;
+
+		if (dimension == 0) {
+			// there is only one vector in the space
+			return isCyclic(v) ? v : null;
+		}
+
+		int columns = kernel.length;
+		long[] words = new long[dimension];
+		long[] slices = new long[columns];
+		int[] indices = new int[taxonCount * taxonCount];
+
+		int index = 0;
+		for (int i = 1; i < taxonCount - 1; i++) {
+			for (int j = i + 1; j < taxonCount; j++) {
+				indices[taxonCount * i + j] = index++;
+			}
+		}
+
+		do {
+			for (int k = 0; k < dimension; k++) {
+				words[k] = random.nextLong();
+			}
+
+			for (int c = 0; c < columns; c++) {
+				long slice = v.getElementOnIndex(c) ? -1L : 0L;
+				for (int w = 0; w < kernel[c].length; w++) {
+					long bits = kernel[c][w];
+					while (bits != 0) {
+						slice ^= words[64 * w + Long.numberOfTrailingZeros(bits)];
+						bits &= bits - 1;
+					}
+				}
+				slices[c] = slice;
+			}
+
+			sampleCount += 64;
+
+			// throw away the samples with a cycle on a random subset
+			long alive = -1L;
+			for (int t = 0; t < SUBSETS_PER_TAXON * taxonCount && alive != 0 && taxonCount > 3; t++) {
+				int i = 1 + random.nextInt(taxonCount - 1);
+				int j = 1 + random.nextInt(taxonCount - 1);
+				int k = 1 + random.nextInt(taxonCount - 1);
+				if (i == j || i == k || j == k) {
+					continue;
+				}
+				int a = Math.min(i, Math.min(j, k));
+				int c = Math.max(i, Math.max(j, k));
+				int b = i + j + k - a - c;
+				alive &= ~cycle(slices[indices[taxonCount * a + b]], slices[indices[taxonCount * a + c]],
+						slices[indices[taxonCount * b + c]]);
+			}
+
+			// check the remaining ones completely
+			while (alive != 0) {
+				int s = Long.numberOfTrailingZeros(alive);
+				alive &= alive - 1;
+
+				DenseVector sample = new DenseVector(taxonCount);
+				for (int c = 0; c < columns; c++) {
+					if (((slices[c] >>> s) & 1L) == 1L) {
+						sample.setElementOnIndex(c, true);
+					}
+				}
+
+				if (isCyclic(sample)) {
+					return sample;
+				}
+			}
+
+		} while (System.currentTimeMillis() < deadline);
+
+		return null;
+	}
+
+	/**
+	 * Returns whether the given vector is cyclic, using {@link DenseVector#determineOrder()}.
+	 *
+	 * @param x The vector.
+	 * @return <code>true</code> if <code>x</code> is cyclic, <code>false</code> otherwise.
+	 */
+	private static boolean isCyclic(DenseVector x) {
+		return x.determineOrder() != null;
+	}
+
+	/**
+	 * Determines for 64 samples at once whether taxa <code>a &lt; b &lt; c</code>
+	 * form a cycle, given the elements for <code>(0, a, b)</code>, <code>(0, a, c)</code>
+	 * and <code>(0, b, c)</code>.
+	 *
+	 * <p>The elements tell whether the first taxon comes before the second one. There
+	 * is a cycle if <code>a</code> comes before <code>b</code> and <code>b</code> before
+	 * <code>c</code>, but not <code>a</code> before <code>c</code>, or the other way round.</p>
+	 *
+	 * @param ab The slice of <code>(0, a, b)</code>.
+	 * @param ac The slice of <code>(0, a, c)</code>.
+	 * @param bc The slice of <code>(0, b, c)</code>.
+	 * @return The samples that have a cycle.
+	 */
+	private static long cycle(long ab, long ac, long bc) {
+		return ~(ab ^ bc) & (ab ^ ac);
+	}
+}
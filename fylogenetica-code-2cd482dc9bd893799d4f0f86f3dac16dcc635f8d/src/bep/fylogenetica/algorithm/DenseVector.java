@@ -91,6 +91,51 @@ public class DenseVector {
 	 */
 	private static Object mutex = new Object();
 	
+	/**
+	 * Cache of the taxon masks of the previously used taxon count. See
+	 * {@link #extendReversal(DenseVector, int)}.
+	 */
+	private static volatile TaxonMasks savedTaxonMasks;
+	
+	/**
+	 * The taxon masks for a taxon count: for every taxon, the elements of the triples
+	 * that contain that taxon. Objects of this class are not modified after they are
+	 * created, so they can be shared between threads without locking.
+	 */
+	private static final class TaxonMasks {
+		
+		/**
+		 * The taxon count.
+		 */
+		final int taxonCount;
+		
+		/**
+		 * The mask of every taxon.
+		 */
+		final long[][] masks;
+		
+		/**
+		 * Computes the masks for a taxon count.
+		 * 
+		 * @param taxonCount The taxon count.
+		 * @param length The length of the values of a vector with this taxon count.
+		 */
+		TaxonMasks(int taxonCount, int length) {
+			this.taxonCount = taxonCount;
+			masks = new long[taxonCount][length];
+			
+			int index = 0;
+			for (int i = 1; i < taxonCount - 1; i++) {
+				for (int j = i + 1; j < taxonCount; j++) {
+					masks[0][index / 64] |= 1L << (index % 64);
+					masks[i][index / 64] |= 1L << (index % 64);
+					masks[j][index / 64] |= 1L << (index % 64);
+					index++;
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Produces a new vector over the given taxa set.
 	 * @param taxonCount The amount of taxa to construct the vector for.
@@ -335,6 +380,63 @@ public class DenseVector {
 		setElementUnsafe(triple, correction ^ value);
 	}
 	
+	/**
+	 * Flips a certain element of the vector, based on its index in the array.
+	 * 
+	 * @param index The index of the element to flip.
+	 */
+	public void flipElementOnIndex(int index) {
+		values[index/64] ^= (1L << (index % 64));
+	}
+	
+	/**
+	 * Returns the index of the first element on or after <code>fromIndex</code>
+	 * that is set to 1. This can be used to iterate over the non-zero elements:
+	 * <pre>
+	 * for (int i = v.nextSetIndex(0); i != -1; i = v.nextSetIndex(i + 1)) { ... }
+	 * </pre>
+	 * 
+	 * @param fromIndex The index to start searching from (inclusive).
+	 * @return The index of the next element that is set, or <code>-1</code> if
+	 * there is no such element.
+	 */
+	public int nextSetIndex(int fromIndex) {
+		
+		int word = fromIndex / 64;
+		
+		if (word >= values.length) {
+			return -1;
+		}
+		
+		long bits = values[word] & (-1L << (fromIndex % 64));
+		
+		while (bits == 0) {
+			word++;
+			if (word == values.length) {
+				return -1;
+			}
+			bits = values[word];
+		}
+		
+		return word * 64 + Long.numberOfTrailingZeros(bits);
+	}
+	
+	/**
+	 * Returns the number of elements in this vector that are set to 1.
+	 * 
+	 * @return The number of non-zero elements.
+	 */
+	public int countSetElements() {
+		
+		int count = 0;
+		
+		for (long b : values) {
+			count += Long.bitCount(b);
+		}
+		
+		return count;
+	}
+	
 	/**
 	 * Adds another vector to this vector in-place.
 	 * 
@@ -355,6 +457,70 @@ public class DenseVector {
 		}
 	}
 	
+	/**
+	 * Sets this vector to the sum of two other vectors.
+	 * 
+	 * @param v The first vector.
+	 * @param w The second vector.
+	 */
+	public void setToSum(DenseVector v, DenseVector w) {
+		assert values.length == v.values.length;
+		assert values.length == w.values.length;
+		
+		for (int i = 0; i < values.length; i++) {
+			values[i] = v.values[i] ^ w.values[i];
+		}
+	}
+	
+	/**
+	 * Adds a taxon to the block of a reversal.
+	 * 
+	 * <p>When a block of taxa on a {@link CyclicOrder} is reversed, the element for
+	 * a triple changes if and only if at least two taxa of the triple are in the block.
+	 * This vector contains those triples, and <code>members</code> contains the triples
+	 * with at least one taxon in the block. Both are updated for the new taxon at once
+	 * for 64 elements, using a precomputed mask for every taxon.</p>
+	 * 
+	 * @param members The triples that have at least one taxon in the block. This is
+	 * updated as well.
+	 * @param taxon The taxon to add to the block.
+	 */
+	public void extendReversal(DenseVector members, int taxon) {
+		assert values.length == members.values.length;
+		
+		long[] mask = getTaxonMask(taxon);
+		
+		for (int i = 0; i < values.length; i++) {
+			values[i] |= members.values[i] & mask[i];
+			members.values[i] |= mask[i];
+		}
+	}
+	
+	/**
+	 * Returns the mask of the given taxon, that is, the elements of the triples
+	 * <code>(0, i, j)</code> containing that taxon. For taxon 0, these are all
+	 * elements.
+	 * 
+	 * <p>Like the conversion tables, the masks are the same for all vectors with
+	 * the same taxon count, so they are cached in a static object. The cache is
+	 * replaced as a whole when the taxon count changes, and is read without a lock,
+	 * since this is called from the parallel tasks of {@link SplitScanner}. If two
+	 * threads find the cache out of date at the same time, both compute the masks.</p>
+	 * 
+	 * @param taxon The taxon.
+	 * @return The mask. This array should not be modified.
+	 */
+	private long[] getTaxonMask(int taxon) {
+		
+		TaxonMasks saved = savedTaxonMasks;
+		if (saved == null || saved.taxonCount != taxonCount) {
+			saved = new TaxonMasks(taxonCount, values.length);
+			savedTaxonMasks = saved;
+		}
+		
+		return saved.masks[taxon];
+	}
+	
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer("[");
@@ -398,30 +564,76 @@ public class DenseVector {
 	 * Creates a cyclic order <code>f</code> based on this {@link DenseVector}
 	 * <code>x<sup>f</sup></code>.
 	 * 
-	 * @throws NotCyclicException When this vector was not cyclic.
+	 * <p>With taxon 0 as the anchor, the element for <code>(0, i, j)</code> tells
+	 * whether <code>i</code> comes before <code>j</code>. So the other taxa are
+	 * sorted with that as the comparison (see {@link #isBefore(int, int)}), which
+	 * needs <code>O(n log n)</code> lookups. If this vector is cyclic, the result is
+	 * the order it encodes. If not, the comparison is not transitive, and the sorted
+	 * order is not consistent with every element of this vector. This is checked
+	 * afterwards with {@link CyclicOrder#consistentWithVector(DenseVector)}, which
+	 * takes <code>O(n<sup>2</sup>)</code> time.</p>
+	 * 
+	 * @return The cyclic order, or <code>null</code> if this vector was not cyclic.
 	 */
-	public CyclicOrder determineOrder() throws NotCyclicException {
-
-		CyclicOrder result = new CyclicOrder(0);
+	public CyclicOrder determineOrder() {
 		
+		int[] order = new int[taxonCount];
 		for (int i = 0; i < taxonCount; i++) {
-			boolean notCyclic = result.addTaxonBasedOnVector(i, this);
-			if(notCyclic) {
-				return null;
+			order[i] = i;
+		}
+		
+		// sort everything after the anchor, using merge sort (this doesn't mind
+		// comparisons that aren't transitive)
+		int[] buffer = new int[taxonCount];
+		for (int width = 1; width < taxonCount - 1; width *= 2) {
+			for (int begin = 1; begin < taxonCount; begin += 2 * width) {
+				int middle = Math.min(begin + width, taxonCount);
+				int end = Math.min(begin + 2 * width, taxonCount);
+				
+				int left = begin;
+				int right = middle;
+				for (int k = begin; k < end; k++) {
+					if (right == end || (left < middle && !isBefore(order[right], order[left]))) {
+						buffer[k] = order[left++];
+					} else {
+						buffer[k] = order[right++];
+					}
+				}
 			}
+			
+			int[] h = order;
+			order = buffer;
+			buffer = h;
+			order[0] = 0;
 		}
 		
-		// Second step: it may be that the result isn't correct.
-		// This happens when the vector wasn't cyclic.
-		Triple t = result.consistentWithVector(this);
+		CyclicOrder result = new CyclicOrder(order);
 		
-		if (t != null) {
-			throw new NotCyclicException();
+		// it may be that the result isn't correct;
+		// this happens when the vector wasn't cyclic
+		if (result.consistentWithVector(this) != null) {
+			return null;
 		}
 		
 		return result;
 	}
 	
+	/**
+	 * Returns whether taxon <code>i</code> comes before taxon <code>k</code>,
+	 * according to this vector. This is the element for the triple <code>(0, i, k)</code>,
+	 * like {@link #getElement(Triple)} would return it.
+	 * 
+	 * @param i The first taxon, not 0.
+	 * @param k The second taxon, not 0 and not <code>i</code>.
+	 * @return Whether <code>i</code> comes before <code>k</code>.
+	 */
+	boolean isBefore(int i, int k) {
+		if (i < k) {
+			return getElementOnIndex(stupidToSmart[taxonCount * i + k]);
+		}
+		return !getElementOnIndex(stupidToSmart[taxonCount * k + i]);
+	}
+	
 	/**
 	 * Multiplies another vector with this vector and returns the result.
 	 * 
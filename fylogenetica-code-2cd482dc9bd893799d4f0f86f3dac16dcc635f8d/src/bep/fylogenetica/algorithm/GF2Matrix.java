@@ -131,6 +131,141 @@ public abstract class GF2Matrix {
 		return null;
 	}
 	
+	/**
+	 * Determines a basis of the kernel of this matrix, that is, of the space of
+	 * vectors <code>y</code> with <code>Ay = 0</code>. Adding kernel vectors to a
+	 * conforming vector results in all other conforming vectors.
+	 * 
+	 * <p>The basis is returned per column: element <code>c</code> of the result is a
+	 * bitset (in the same format as the values of a {@link DenseVector}) that contains
+	 * basis vector <code>k</code> if and only if that vector is non-zero on index
+	 * <code>c</code>. All bitsets have the same length.</p>
+	 * 
+	 * <p>The matrix needs to be in reduced row-echelon form before calling this
+	 * method. If it is not, call {@link #rowReduce(boolean)} before to reduce
+	 * the matrix.</p>
+	 * 
+	 * @return For every column, the basis vectors that are non-zero in that column.
+	 */
+	public long[][] getKernelColumns() {
+		System.out.println("wrong");
+		return null;
+	}
+	
+	/**
+	 * Finds all witnesses, given the kernel of this matrix (as returned by
+	 * {@link #getKernelColumns()}).
+	 * 
+	 * <p>A set <code>{a, b, c, d}</code> (with <code>a &lt; b &lt; c &lt; d</code>) is a
+	 * witness if the elements for the triples <code>(a, b, c)</code>, <code>(a, b, d)</code>
+	 * and <code>(a, c, d)</code> can be chosen independently within the space of
+	 * conforming vectors. This is checked by computing, for each of these triples, the
+	 * basis vectors of the kernel that change its element, and checking that these
+	 * three sets are linearly independent. This is the same as the rank check that
+	 * {@link GF2MatrixDense#findWitnesses()} does, but doesn't need any reduction.</p>
+	 * 
+	 * @param kernel The kernel, as returned by {@link #getKernelColumns()}.
+	 * @return A list of all witnesses, in lexicographical order.
+	 */
+	protected ArrayList<Witness> findWitnessesInKernel(long[][] kernel) {
+		
+		ArrayList<Witness> witnesses = new ArrayList<>();
+		
+		if (taxonCount < 4 || kernel.length == 0 || kernel[0].length == 0) {
+			return witnesses;
+		}
+		
+		int words = kernel[0].length;
+		
+		// index of the column (0, i, j)
+		DenseVector v = new DenseVector(taxonCount);
+		int[][] index = new int[taxonCount][taxonCount];
+		for (int i = 1; i < taxonCount - 1; i++) {
+			for (int j = i + 1; j < taxonCount; j++) {
+				index[i][j] = v.tripleToIndex(new Triple(0, i, j));
+			}
+		}
+		
+		long[] abc = new long[words];
+		long[] abd = new long[words];
+		long[] acd = new long[words];
+		
+		for (int a = 0; a < taxonCount - 3; a++) {
+			for (int b = a + 1; b < taxonCount - 2; b++) {
+				for (int c = b + 1; c < taxonCount - 1; c++) {
+					tripleInKernel(kernel, index, a, b, c, abc);
+					
+					for (int d = c + 1; d < taxonCount; d++) {
+						tripleInKernel(kernel, index, a, b, d, abd);
+						tripleInKernel(kernel, index, a, c, d, acd);
+						
+						if (independent(abc, abd, acd)) {
+							witnesses.add(new Witness(a, b, c, d));
+						}
+					}
+				}
+			}
+		}
+		
+		return witnesses;
+	}
+	
+	/**
+	 * Computes the basis vectors of the kernel that change the element for the
+	 * triple <code>(a, b, c)</code>, with <code>a &lt; b &lt; c</code>. (For
+	 * <code>a != 0</code>, this element is the sum of three stored elements; see
+	 * {@link DenseVector#getElement(Triple)}.)
+	 * 
+	 * @param kernel The kernel.
+	 * @param index The indices of the columns.
+	 * @param a The first element of the triple.
+	 * @param b The second element of the triple.
+	 * @param c The third element of the triple.
+	 * @param result The array to put the result in.
+	 */
+	private static void tripleInKernel(long[][] kernel, int[][] index, int a, int b, int c, long[] result) {
+		
+		if (a == 0) {
+			System.arraycopy(kernel[index[b][c]], 0, result, 0, result.length);
+			return;
+		}
+		
+		long[] ab = kernel[index[a][b]];
+		long[] ac = kernel[index[a][c]];
+		long[] bc = kernel[index[b][c]];
+		
+		for (int w = 0; w < result.length; w++) {
+			result[w] = ab[w] ^ ac[w] ^ bc[w];
+		}
+	}
+	
+	/**
+	 * Checks whether the three given bitsets are linearly independent over GF(2).
+	 * 
+	 * @param x The first bitset.
+	 * @param y The second bitset.
+	 * @param z The third bitset.
+	 * @return <code>true</code> if none of <code>x</code>, <code>y</code>, <code>z</code>,
+	 * <code>x + y</code>, <code>x + z</code>, <code>y + z</code> and <code>x + y + z</code>
+	 * is zero, <code>false</code> otherwise.
+	 */
+	private static boolean independent(long[] x, long[] y, long[] z) {
+		
+		long or = 0, orX = 0, orY = 0, orZ = 0, orXY = 0, orXZ = 0, orYZ = 0;
+		
+		for (int w = 0; w < x.length; w++) {
+			orX |= x[w];
+			orY |= y[w];
+			orZ |= z[w];
+			orXY |= x[w] ^ y[w];
+			orXZ |= x[w] ^ z[w];
+			orYZ |= y[w] ^ z[w];
+			or |= x[w] ^ y[w] ^ z[w];
+		}
+		
+		return orX != 0 && orY != 0 && orZ != 0 && orXY != 0 && orXZ != 0 && orYZ != 0 && or != 0;
+	}
+	
 	/**
 	 * Checks whether the given vector <code>v</code> conforms to this matrix. So if we call
 	 * this matrix
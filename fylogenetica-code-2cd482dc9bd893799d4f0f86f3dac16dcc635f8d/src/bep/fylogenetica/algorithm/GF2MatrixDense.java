@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 
 import javax.imageio.ImageIO;
 
@@ -133,65 +134,259 @@ public class GF2MatrixDense extends GF2Matrix {
 		
 		return result;
 	}
-	
 	/**
 	 * Brings the matrix in reduced row-echelon form.
 	 * 
-	 * @param debug Whether to debug. TODO should be removed!
+	 * <p>First the matrix is split into independent blocks: two columns are in the
+	 * same block if some row has non-zero elements in both of them (that is, the
+	 * connected components of the bipartite graph between rows and columns). Rows
+	 * of different blocks never need to be added to each other, so the blocks are
+	 * reduced independently and in parallel (see {@link #reduceBlock(boolean, int, int)}).
+	 * Afterwards all pivot rows are ordered by their pivot column and the zero rows
+	 * are put at the bottom, which gives exactly the reduced row-echelon form of the
+	 * whole matrix. So the rank, the consistency, the conforming vector and the kernel
+	 * are the same as without the decomposition.</p>
+	 * 
+	 * @param debug Whether to debug. TODO should be removed! If this is
+	 * <code>true</code>, the matrix is not decomposed.
 	 */
 	@Override
 	public void rowReduce(boolean debug) {
 		
-		int row = 0;
+		int columns = getColumnCount() - 1;
+		int rows = getRowCount();
+		
+		if (debug) {
+			reduceBlock(true, 0, columns);
+			return;
+		}
+		
+		// find the blocks
+		ParityUnionFind blocks = new ParityUnionFind(columns);
+		// the leading column of every row (or -1 for zero rows), and later the
+		// block the row is in
+		int[] block = new int[rows];
+		// the leading and the last column of every row
+		int[] low = new int[rows];
+		int[] high = new int[rows];
 		
-		for (int col = 0; col < getColumnCount(); col++) { // TODO in de laatste kolom vegen?
+		for (int i = 0; i < rows; i++) {
+			DenseVector v = vectors.get(i);
+			block[i] = v.nextSetIndex(0);
+			low[i] = high[i] = block[i];
+			if (block[i] != -1) {
+				for (int col = v.nextSetIndex(block[i] + 1); col != -1; col = v.nextSetIndex(col + 1)) {
+					blocks.union(block[i], col, false);
+					high[i] = col;
+				}
+			}
+		}
+		
+		boolean[] used = new boolean[columns];
+		int blockCount = 0;
+		for (int i = 0; i < rows; i++) {
+			if (block[i] != -1) {
+				block[i] = blocks.find(block[i]);
+				if (!used[block[i]]) {
+					used[block[i]] = true;
+					blockCount++;
+				}
+			}
+		}
+		
+		if (blockCount <= 1) {
+			reduceBlock(false, 0, columns);
+			return;
+		}
+		
+		// divide the rows over the blocks, and find the range of columns of every block
+		HashMap<Integer, GF2MatrixDense> matrices = new HashMap<Integer, GF2MatrixDense>();
+		HashMap<Integer, int[]> ranges = new HashMap<Integer, int[]>();
+		ArrayList<DenseVector> zeroVectors = new ArrayList<DenseVector>();
+		ArrayList<Boolean> zeroResults = new ArrayList<Boolean>();
+		
+		for (int i = 0; i < rows; i++) {
+			if (block[i] == -1) {
+				zeroVectors.add(vectors.get(i));
+				zeroResults.add(results.get(i));
+				continue;
+			}
+			
+			GF2MatrixDense matrix = matrices.get(block[i]);
+			int[] range = ranges.get(block[i]);
+			if (matrix == null) {
+				matrix = new GF2MatrixDense(taxonCount);
+				matrices.put(block[i], matrix);
+				range = new int[] {low[i], high[i] + 1};
+				ranges.put(block[i], range);
+			}
+			matrix.vectors.add(vectors.get(i));
+			matrix.results.add(results.get(i));
+			range[0] = Math.min(range[0], low[i]);
+			range[1] = Math.max(range[1], high[i] + 1);
+		}
+		
+		// reduce the blocks; they don't share any columns, so this can be done in parallel
+		matrices.keySet().parallelStream().forEach(b -> matrices.get(b).reduceBlock(false, ranges.get(b)[0], ranges.get(b)[1]));
+		
+		// merge the pivot rows of all blocks, in order of their pivot column
+		DenseVector[] pivotVectors = new DenseVector[columns];
+		boolean[] pivotResults = new boolean[columns];
+		
+		for (GF2MatrixDense matrix : matrices.values()) {
+			for (int i = 0; i < matrix.getRowCount(); i++) {
+				DenseVector v = matrix.vectors.get(i);
+				int pivot = v.nextSetIndex(0);
+				if (pivot == -1) {
+					zeroVectors.add(v);
+					zeroResults.add(matrix.results.get(i));
+				} else {
+					pivotVectors[pivot] = v;
+					pivotResults[pivot] = matrix.results.get(i);
+				}
+			}
+		}
+		
+		vectors = new ArrayList<DenseVector>(rows);
+		results = new ArrayList<Boolean>(rows);
+		
+		for (int col = 0; col < columns; col++) {
+			if (pivotVectors[col] != null) {
+				vectors.add(pivotVectors[col]);
+				results.add(pivotResults[col]);
+			}
+		}
+		vectors.addAll(zeroVectors);
+		results.addAll(zeroResults);
+	}
+	
+	/**
+	 * Brings the matrix in reduced row-echelon form, without splitting it into blocks.
+	 * 
+	 * <p>Instead of scanning all rows for a pivot in every column, the rows are kept
+	 * in buckets by their leading column (the index of their first non-zero element).
+	 * When a column is handled, its bucket contains exactly the rows that have to be
+	 * considered: one of them becomes the pivot, and it is added to the others, which
+	 * are then moved to the bucket of their new leading column. Rows that become zero
+	 * are put aside. The pivot is also eliminated from the pivot rows of the earlier
+	 * columns.</p>
+	 * 
+	 * <p>Afterwards the pivot rows are ordered by their pivot column, and the zero rows
+	 * are at the bottom.</p>
+	 * 
+	 * <p>Only the columns from <code>low</code> up to <code>high</code> are handled, so
+	 * that the work for a block doesn't depend on the width of the whole matrix. All
+	 * non-zero elements of the rows have to be in these columns; adding rows never
+	 * creates elements outside them.</p>
+	 * 
+	 * @param debug Whether to debug. TODO should be removed!
+	 * @param low The first column that may contain non-zero elements.
+	 * @param high One more than the last column that may contain non-zero elements.
+	 */
+	private void reduceBlock(boolean debug, int low, int high) {
+		
+		int rows = getRowCount();
+		
+		// the buckets, as linked lists: the first row with every leading column
+		// (relative to low), and for every row the next row in the same bucket (or -1)
+		int[] first = new int[high - low];
+		int[] next = new int[rows];
+		Arrays.fill(first, -1);
+		
+		ArrayList<Integer> zeroRows = new ArrayList<Integer>();
+		
+		// fill the buckets in reverse order, so that every bucket starts with the row
+		// that is highest up in the matrix
+		for (int i = rows - 1; i >= 0; i--) {
+			int leading = vectors.get(i).nextSetIndex(0);
+			if (leading == -1) {
+				zeroRows.add(i);
+			} else {
+				next[i] = first[leading - low];
+				first[leading - low] = i;
+			}
+		}
+		Collections.reverse(zeroRows);
+		
+		// the pivot row of every column so far, in the order of the columns
+		ArrayList<Integer> pivotRows = new ArrayList<Integer>();
+		
+		for (int col = low; col < high; col++) {
+			
+			if (first[col - low] == -1) {
+				continue;
+			}
 			
 			if (debug) {
 				// create an image for fun
 				try {
-					ImageIO.write(toImage(), "png", new File("C:/Users/20202991/Dropbox/My PC (S20202991)/Desktop/Bep_test/" + row + "." + col + ".png"));
+					ImageIO.write(toImage(), "png", new File("C:/Users/20202991/Dropbox/My PC (S20202991)/Desktop/Bep_test/" + pivotRows.size() + "." + col + ".png"));
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 				
-				System.out.println("row " + row + ", col " + col);
+				System.out.println("row " + pivotRows.size() + ", col " + col);
 			}
-
-			// look for a pivot
-			int pivot = -1;
-			for (int i = row; i < getRowCount(); i++) {
-				if (vectors.get(i).getElementOnIndex(col) == true) {
+			
+			// use the row with the fewest non-zero elements as the pivot, to keep
+			// the fill-in low
+			int pivot = first[col - low];
+			int pivotCount = vectors.get(pivot).countSetElements();
+			for (int i = next[pivot]; i != -1 && pivotCount > 1; i = next[i]) {
+				int count = vectors.get(i).countSetElements();
+				if (count < pivotCount) {
 					pivot = i;
-					break;
+					pivotCount = count;
 				}
 			}
 			
-			if (pivot == -1) {
-				// no pivot found? then don't increase the row number and continue with
-				// the next column
-				continue;
-			}
-			
-			// swap the rows to make it easier
-			swapRows(row, pivot);
-
-			// the first part of the row should contain only zeroes now 
-			// assert vectors.get(row).containsOnlyZeroes(0, col);
-			
-			for (int i = 0; i < row; i++) {
-				if (vectors.get(i).getElementOnIndex(col) == true) {
-					addRowTo(row, i, col);
+			// eliminate from the other rows in the bucket
+			for (int i = first[col - low]; i != -1; ) {
+				int nextRow = next[i];
+				
+				if (i == pivot) {
+					i = nextRow;
+					continue;
+				}
+				
+				addRowTo(pivot, i, col);
+				
+				int leading = vectors.get(i).nextSetIndex(col + 1);
+				if (leading == -1) {
+					zeroRows.add(i);
+				} else {
+					next[i] = first[leading - low];
+					first[leading - low] = i;
 				}
+				
+				i = nextRow;
 			}
 			
-			for (int i = row + 1; i < getRowCount(); i++) {
-				if (vectors.get(i).getElementOnIndex(col) == true) {
-					addRowTo(row, i, col);
+			// eliminate from the earlier pivot rows
+			for (int i : pivotRows) {
+				if (vectors.get(i).getElementOnIndex(col)) {
+					addRowTo(pivot, i, col);
 				}
 			}
 			
-			row++;
+			pivotRows.add(pivot);
+		}
+		
+		// put the rows in order
+		ArrayList<DenseVector> newVectors = new ArrayList<DenseVector>(rows);
+		ArrayList<Boolean> newResults = new ArrayList<Boolean>(rows);
+		
+		for (int i : pivotRows) {
+			newVectors.add(vectors.get(i));
+			newResults.add(results.get(i));
+		}
+		for (int i : zeroRows) {
+			newVectors.add(vectors.get(i));
+			newResults.add(results.get(i));
 		}
+		
+		vectors = newVectors;
+		results = newResults;
 	}
 	
 	/**
@@ -213,19 +408,6 @@ public class GF2MatrixDense extends GF2Matrix {
 		// add results
 		results.set(i, results.get(i) ^ results.get(row));
 	}
-
-	/**
-	 * Swaps the rows on the given indices.
-	 * @param row1 The first row.
-	 * @param row2 The second row.
-	 */
-	private void swapRows(int row1, int row2) {
-		// swap vectors
-		Collections.swap(vectors, row1, row2);
-		
-		// swap results
-		Collections.swap(results, row1, row2);
-	}
 	
 	/**
 	 * Returns whether the matrix is <i>consistent</i>.
@@ -321,6 +503,51 @@ public class GF2MatrixDense extends GF2Matrix {
 		return w;
 	}
 
+	/**
+	 * Determines a basis of the kernel of this matrix, per column (see
+	 * {@link GF2Matrix#getKernelColumns()}). This contains the same basis vectors
+	 * as {@link #getKernel()}.
+	 * 
+	 * @return For every column, the basis vectors that are non-zero in that column.
+	 */
+	@Override
+	public long[][] getKernelColumns() {
+		
+		int columns = getColumnCount() - 1;
+		
+		// number the free columns
+		int[] free = new int[columns];
+		DenseVector[] pivotRows = new DenseVector[columns];
+		
+		for (DenseVector v : vectors) {
+			int pivot = v.nextSetIndex(0);
+			if (pivot != -1) {
+				pivotRows[pivot] = v;
+			}
+		}
+		
+		int freeCount = 0;
+		for (int col = 0; col < columns; col++) {
+			free[col] = pivotRows[col] == null ? freeCount++ : -1;
+		}
+		
+		long[][] kernel = new long[columns][(freeCount + 63) / 64];
+		
+		for (int col = 0; col < columns; col++) {
+			if (free[col] != -1) {
+				kernel[col][free[col] / 64] |= 1L << (free[col] % 64);
+			} else {
+				// the other elements of a pivot row are all in free columns
+				DenseVector v = pivotRows[col];
+				for (int c = v.nextSetIndex(col + 1); c != -1; c = v.nextSetIndex(c + 1)) {
+					kernel[col][free[c] / 64] |= 1L << (free[c] % 64);
+				}
+			}
+		}
+		
+		return kernel;
+	}
+
 	public GF2MatrixDense select(ArrayList<Integer> taxa) {
 		GF2MatrixDense m = new GF2MatrixDense(taxa.size());
 		for (DenseVector v : vectors) {
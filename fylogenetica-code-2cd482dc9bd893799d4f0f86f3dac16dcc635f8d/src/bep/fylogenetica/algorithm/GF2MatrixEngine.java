@@ -0,0 +1,29 @@
+package bep.fylogenetica.algorithm;
+
+/**
+ * An implementation of {@link GF2Matrix} that can be chosen by the
+ * {@link GF2MatrixFactory}.
+ *
+ * <p>Engines are found using a {@link java.util.ServiceLoader}, so an engine can be
+ * added by listing its class in
+ * <code>META-INF/services/bep.fylogenetica.algorithm.GF2MatrixEngine</code>. It needs
+ * a public constructor without arguments.</p>
+ */
+public interface GF2MatrixEngine {
+
+	/**
+	 * Returns the name of this engine. This is the name that can be used to select
+	 * the engine explicitly (see {@link GF2MatrixFactory#ENGINE_PROPERTY}).
+	 *
+	 * @return The name, in lower case.
+	 */
+	public String getName();
+
+	/**
+	 * Creates a new, empty matrix.
+	 *
+	 * @param taxonCount The amount of taxa to construct the matrix for.
+	 * @return The matrix.
+	 */
+	public GF2Matrix createMatrix(int taxonCount);
+}
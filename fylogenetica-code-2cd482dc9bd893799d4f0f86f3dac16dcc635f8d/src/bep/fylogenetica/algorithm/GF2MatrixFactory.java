@@ -0,0 +1,225 @@
+package bep.fylogenetica.algorithm;
+
+import java.util.ArrayList;
+import java.util.ServiceLoader;
+
+/**
+ * Creates {@link GF2Matrix} objects, using the engine that fits the input best.
+ *
+ * <p>The engines are found with a {@link ServiceLoader} (see {@link GF2MatrixEngine}).
+ * The built-in engines are:
+ * <ul>
+ * <li><code>dense</code>: {@link GF2MatrixDense};</li>
+ * <li><code>sparse</code>: {@link GF2MatrixSparse};</li>
+ * <li><code>presolved</code>: {@link GF2MatrixPresolved};</li>
+ * <li><code>ordered</code>: {@link GF2MatrixOrdered}, which relabels the taxa and
+ * then uses a {@link GF2MatrixPresolved}.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Normally the engine is chosen automatically, see
+ * {@link #selectEngine(int, int)}. This can be overridden by setting the system
+ * property {@link #ENGINE_PROPERTY} to the name of an engine (the application
+ * sets it for the <code>--engine</code> option).</p>
+ */
+public class GF2MatrixFactory {
+
+	/**
+	 * The system property that selects the engine. If this is not set, or set to
+	 * <code>auto</code>, the engine is chosen automatically.
+	 */
+	public static final String ENGINE_PROPERTY = "fylogenetica.engine";
+
+	/**
+	 * The number of taxa below which the <code>dense</code> engine is chosen.
+	 */
+	public static final int SMALL_TAXON_COUNT = 16;
+
+	/**
+	 * The fraction of sets of four taxa with a quartet above which the
+	 * <code>presolved</code> engine is chosen.
+	 */
+	public static final double DENSE_FRACTION = 0.25;
+
+	/**
+	 * The engines that were found, or <code>null</code> if they weren't searched
+	 * for yet.
+	 */
+	private static ArrayList<GF2MatrixEngine> engines;
+
+	/**
+	 * Returns all available engines.
+	 *
+	 * <p>If the service file can't be found (for example when the resources are not on
+	 * the class path), the built-in engines are returned.</p>
+	 *
+	 * @return A list of engines.
+	 */
+	public static synchronized ArrayList<GF2MatrixEngine> getEngines() {
+
+		if (engines == null) {
+			engines = new ArrayList<GF2MatrixEngine>();
+
+			for (GF2MatrixEngine engine : ServiceLoader.load(GF2MatrixEngine.class)) {
+				engines.add(engine);
+			}
+
+			if (engines.isEmpty()) {
+				engines.add(new Dense());
+				engines.add(new Sparse());
+				engines.add(new Presolved());
+				engines.add(new Ordered());
+			}
+		}
+
+		return engines;
+	}
+
+	/**
+	 * Returns the engine with the given name.
+	 *
+	 * @param name The name of the engine.
+	 * @return The engine.
+	 * @throws IllegalArgumentException If there is no engine with that name.
+	 */
+	public static GF2MatrixEngine getEngine(String name) {
+
+		StringBuilder names = new StringBuilder();
+
+		for (GF2MatrixEngine engine : getEngines()) {
+			if (engine.getName().equalsIgnoreCase(name)) {
+				return engine;
+			}
+			names.append(' ').append(engine.getName());
+		}
+
+		throw new IllegalArgumentException("Unknown matrix engine '" + name + "'; available are:" + names);
+	}
+
+	/**
+	 * Selects the engine for the given input.
+	 *
+	 * <p>If {@link #ENGINE_PROPERTY} is set, that engine is returned. Otherwise:
+	 * <ul>
+	 * <li>if there are at most as many quartets as taxa, the <code>sparse</code>
+	 * engine is used, since then the rows have very few non-zero elements and there
+	 * are not many rows to combine;</li>
+	 * <li>else, if there are less than {@link #SMALL_TAXON_COUNT} taxa, the
+	 * <code>dense</code> engine is used, since the matrix is small anyway;</li>
+	 * <li>else, if the quartets cover at least {@link #DENSE_FRACTION} of all
+	 * sets of four taxa, the <code>presolved</code> engine is used: most rows
+	 * collapse already, so relabelling doesn't pay off;</li>
+	 * <li>else, the <code>ordered</code> engine is used.</li>
+	 * </ul>
+	 * </p>
+	 *
+	 * <p>These rules follow the timings of
+	 * {@link bep.fylogenetica.analysis.EngineAnalysis}. Below 16 taxa, all engines
+	 * except <code>sparse</code> take a fraction of a millisecond. Above that, the
+	 * <code>dense</code> and <code>sparse</code> engines get much slower, while the
+	 * <code>presolved</code> and <code>ordered</code> engines are usually within a
+	 * factor of about three of each other.</p>
+	 *
+	 * @param taxonCount The number of taxa.
+	 * @param quartetCount The number of quartets that will be added.
+	 * @return The engine.
+	 */
+	public static GF2MatrixEngine selectEngine(int taxonCount, int quartetCount) {
+
+		String name = System.getProperty(ENGINE_PROPERTY);
+
+		if (name != null && !name.equalsIgnoreCase("auto")) {
+			return getEngine(name);
+		}
+
+		if (quartetCount <= taxonCount) {
+			return getEngine("sparse");
+		}
+
+		if (taxonCount < SMALL_TAXON_COUNT) {
+			return getEngine("dense");
+		}
+
+		double quadruples = (double) taxonCount * (taxonCount - 1) * (taxonCount - 2) * (taxonCount - 3) / 24;
+		if (quartetCount >= DENSE_FRACTION * quadruples) {
+			return getEngine("presolved");
+		}
+
+		return getEngine("ordered");
+	}
+
+	/**
+	 * Creates a new, empty matrix, using the engine from {@link #selectEngine(int, int)}.
+	 *
+	 * @param taxonCount The amount of taxa to construct the matrix for.
+	 * @param quartetCount The number of quartets that will be added.
+	 * @return The matrix.
+	 */
+	public static GF2Matrix createMatrix(int taxonCount, int quartetCount) {
+		return selectEngine(taxonCount, quartetCount).createMatrix(taxonCount);
+	}
+
+	/**
+	 * The engine for {@link GF2MatrixDense}.
+	 */
+	public static class Dense implements GF2MatrixEngine {
+
+		@Override
+		public String getName() {
+			return "dense";
+		}
+
+		@Override
+		public GF2Matrix createMatrix(int taxonCount) {
+			return new GF2MatrixDense(taxonCount);
+		}
+	}
+
+	/**
+	 * The engine for {@link GF2MatrixSparse}.
+	 */
+	public static class Sparse implements GF2MatrixEngine {
+
+		@Override
+		public String getName() {
+			return "sparse";
+		}
+
+		@Override
+		public GF2Matrix createMatrix(int taxonCount) {
+			return new GF2MatrixSparse(taxonCount);
+		}
+	}
+
+	/**
+	 * The engine for {@link GF2MatrixPresolved}.
+	 */
+	public static class Presolved implements GF2MatrixEngine {
+
+		@Override
+		public String getName() {
+			return "presolved";
+		}
+
+		@Override
+		public GF2Matrix createMatrix(int taxonCount) {
+			return new GF2MatrixPresolved(taxonCount);
+		}
+	}
+
+	/**
+	 * The engine for {@link GF2MatrixOrdered}.
+	 */
+	public static class Ordered implements GF2MatrixEngine {
+
+		@Override
+		public String getName() {
+			return "ordered";
+		}
+
+		@Override
+		public GF2Matrix createMatrix(int taxonCount) {
+			return new GF2MatrixOrdered(taxonCount);
+		}
+	}
+}
@@ -0,0 +1,423 @@
+package bep.fylogenetica.algorithm;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import bep.fylogenetica.model.Quartet;
+import bep.fylogenetica.model.Witness;
+
+/**
+ * A matrix over GF(2) that relabels the taxa before handing the quartets to
+ * another matrix, in order to keep the reduction cheap.
+ *
+ * <p>The linear system is anchored on the base element (the taxon with ID 0) and
+ * the columns are ordered lexicographically. Both choices have a large impact on
+ * the fill-in during the reduction. Therefore this matrix first collects the
+ * quartets, and on the first reduction it chooses a relabelling:
+ * <ul>
+ * <li>the taxon that occurs in the most quartets becomes the base element, so that
+ * as many rows as possible have only two non-zero elements;</li>
+ * <li>the other taxa are numbered in an (approximate) minimum degree order of the
+ * graph in which two taxa are adjacent if they occur in a quartet together.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>All results are mapped back to the original taxa, so for the outside world this
+ * matrix behaves like any other {@link GF2Matrix}: the vectors accepted by
+ * {@link #conformsToMatrix(DenseVector)} and returned by
+ * {@link #determineConformingVector()} are over the original taxa, and so are
+ * the witnesses. Note however that the conforming vector that is returned may be
+ * a different element of the space than the one the underlying matrix would return
+ * without relabelling.</p>
+ */
+public class GF2MatrixOrdered extends GF2Matrix {
+
+	/**
+	 * The matrix over the relabelled taxa.
+	 */
+	private GF2Matrix matrix;
+
+	/**
+	 * The quartets that were added before the relabelling was chosen.
+	 */
+	private ArrayList<Quartet> pending = new ArrayList<>();
+
+	/**
+	 * The new label of every taxon, or <code>null</code> if the relabelling was
+	 * not chosen yet.
+	 */
+	private int[] newLabel;
+
+	/**
+	 * The original taxon of every new label.
+	 */
+	private int[] oldLabel;
+
+	/**
+	 * For every index of a vector over the new labels, the indices of a vector
+	 * over the original taxa that have to be added to get its value.
+	 */
+	private int[][] toNewSources;
+
+	/**
+	 * For every index of a vector over the new labels, the constant that has to
+	 * be added to get its value.
+	 */
+	private boolean[] toNewCorrections;
+
+	/**
+	 * Like {@link #toNewSources}, but the other way round.
+	 */
+	private int[][] toOldSources;
+
+	/**
+	 * Like {@link #toNewCorrections}, but the other way round.
+	 */
+	private boolean[] toOldCorrections;
+
+	/**
+	 * Creates a new, empty matrix over the given set of taxa, that uses a
+	 * {@link GF2MatrixPresolved} for the relabelled system.
+	 * @param taxonCount The amount of taxa to construct the matrix for.
+	 */
+	public GF2MatrixOrdered(int taxonCount) {
+		this(new GF2MatrixPresolved(taxonCount));
+	}
+
+	/**
+	 * Creates a new matrix that hands the relabelled system to the given matrix.
+	 * @param matrix The (empty) matrix to use for the relabelled system.
+	 */
+	public GF2MatrixOrdered(GF2Matrix matrix) {
+		super(matrix.taxonCount);
+		this.matrix = matrix;
+	}
+
+	/**
+	 * Adds a row to this matrix corresponding to the given quartet. Until the
+	 * first reduction, the quartet is only collected.
+	 *
+	 * @param q The quartet to insert a row for.
+	 */
+	@Override
+	public void addRowForQuartet(Quartet q) {
+		if (newLabel == null) {
+			pending.add(new Quartet(q.left1, q.left2, q.right1, q.right2));
+		} else {
+			matrix.addRowForQuartet(relabel(q));
+		}
+	}
+
+	/**
+	 * Returns the number of rows in this matrix.
+	 * @return The number of rows.
+	 */
+	@Override
+	public int getRowCount() {
+		return newLabel == null ? pending.size() : matrix.getRowCount();
+	}
+
+	/**
+	 * Creates an image depicting the elements of the (relabelled) matrix.
+	 *
+	 * @return The image.
+	 */
+	@Override
+	public BufferedImage toImage() {
+		determineOrdering();
+		return matrix.toImage();
+	}
+
+	/**
+	 * Brings the matrix in reduced row-echelon form. On the first call, the
+	 * relabelling is chosen.
+	 *
+	 * @param debug Whether to debug. TODO should be removed!
+	 */
+	@Override
+	public void rowReduce(boolean debug) {
+		determineOrdering();
+		matrix.rowReduce(debug);
+	}
+
+	@Override
+	public boolean isConsistent() {
+		determineOrdering();
+		return matrix.isConsistent();
+	}
+
+	@Override
+	public DenseVector determineConformingVector() throws MatrixInconsistentException {
+		determineOrdering();
+		return map(matrix.determineConformingVector(), toOldSources, toOldCorrections);
+	}
+
+	@Override
+	public ArrayList<Witness> findWitnesses() {
+		determineOrdering();
+
+		ArrayList<Witness> witnesses = matrix.findWitnesses();
+
+		if (witnesses == null) {
+			return null;
+		}
+
+		ArrayList<Witness> result = new ArrayList<>();
+		for (Witness w : witnesses) {
+			Witness original = new Witness(oldLabel[w.taxa[0]], oldLabel[w.taxa[1]],
+					oldLabel[w.taxa[2]], oldLabel[w.taxa[3]]);
+			original.toCanonicalForm();
+			result.add(original);
+		}
+
+		// same order as the other matrices use: lexicographically
+		result.sort((w1, w2) -> {
+			for (int i = 0; i < 4; i++) {
+				if (w1.taxa[i] != w2.taxa[i]) {
+					return Integer.compare(w1.taxa[i], w2.taxa[i]);
+				}
+			}
+			return 0;
+		});
+
+		return result;
+	}
+
+	/**
+	 * Determines a basis of the kernel of this matrix. The basis vectors are the
+	 * ones of the underlying matrix, converted to the original taxa.
+	 * 
+	 * @return For every column, the basis vectors that are non-zero in that column.
+	 */
+	@Override
+	public long[][] getKernelColumns() {
+		determineOrdering();
+		
+		long[][] kernel = matrix.getKernelColumns();
+		long[][] result = new long[kernel.length][];
+		
+		// kernel vectors are homogeneous, so the corrections are not needed here
+		for (int i = 0; i < kernel.length; i++) {
+			result[i] = new long[kernel[i].length];
+			for (int source : toOldSources[i]) {
+				for (int w = 0; w < result[i].length; w++) {
+					result[i][w] ^= kernel[source][w];
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	@Override
+	public boolean conformsToMatrix(DenseVector v) {
+		determineOrdering();
+		return matrix.conformsToMatrix(map(v, toNewSources, toNewCorrections));
+	}
+
+	/**
+	 * Returns the given quartet in terms of the new labels.
+	 *
+	 * @param q The quartet over the original taxa.
+	 * @return A new quartet over the new labels.
+	 */
+	private Quartet relabel(Quartet q) {
+		return new Quartet(newLabel[q.left1], newLabel[q.left2], newLabel[q.right1], newLabel[q.right2]);
+	}
+
+	/**
+	 * Chooses the relabelling (if this didn't happen yet) and adds the collected
+	 * quartets to the underlying matrix.
+	 */
+	private void determineOrdering() {
+
+		if (newLabel != null) {
+			return;
+		}
+
+		newLabel = determineLabels(taxonCount, pending);
+		oldLabel = new int[taxonCount];
+		for (int i = 0; i < taxonCount; i++) {
+			oldLabel[newLabel[i]] = i;
+		}
+
+		createMappings();
+
+		for (Quartet q : pending) {
+			matrix.addRowForQuartet(relabel(q));
+		}
+		pending = null;
+	}
+
+	/**
+	 * Determines the new label of every taxon, as described in the class comment.
+	 *
+	 * @param taxonCount The number of taxa.
+	 * @param quartets The quartets.
+	 * @return An array containing the new label for every taxon.
+	 */
+	static int[] determineLabels(int taxonCount, ArrayList<Quartet> quartets) {
+
+		int[] label = new int[taxonCount];
+
+		if (taxonCount < 4) {
+			for (int i = 0; i < taxonCount; i++) {
+				label[i] = i;
+			}
+			return label;
+		}
+
+		// the base element: the taxon in the most quartets
+		int[] occurrences = new int[taxonCount];
+		for (Quartet q : quartets) {
+			occurrences[q.left1]++;
+			occurrences[q.left2]++;
+			occurrences[q.right1]++;
+			occurrences[q.right2]++;
+		}
+		int base = 0;
+		for (int i = 1; i < taxonCount; i++) {
+			if (occurrences[i] > occurrences[base]) {
+				base = i;
+			}
+		}
+
+		// the graph of taxa that occur together in quartets without the base element
+		// (those are the quartets that give rows with four non-zero elements)
+		int words = (taxonCount + 63) / 64;
+		long[][] adjacent = new long[taxonCount][words];
+		for (Quartet q : quartets) {
+			if (q.contains(base)) {
+				continue;
+			}
+			int[] taxa = new int[] {q.left1, q.left2, q.right1, q.right2};
+			for (int a : taxa) {
+				for (int b : taxa) {
+					if (a != b) {
+						adjacent[a][b / 64] |= 1L << (b % 64);
+					}
+				}
+			}
+		}
+
+		// minimum degree ordering: repeatedly number the taxon with the fewest
+		// neighbours that are not numbered yet, and connect its neighbours (the fill)
+		long[] numbered = new long[words];
+		numbered[base / 64] |= 1L << (base % 64);
+		label[base] = 0;
+
+		for (int next = 1; next < taxonCount; next++) {
+
+			int best = -1;
+			int bestDegree = Integer.MAX_VALUE;
+
+			for (int t = 0; t < taxonCount; t++) {
+				if ((numbered[t / 64] & (1L << (t % 64))) != 0) {
+					continue;
+				}
+				int degree = 0;
+				for (int w = 0; w < words; w++) {
+					degree += Long.bitCount(adjacent[t][w] & ~numbered[w]);
+				}
+				if (degree < bestDegree) {
+					best = t;
+					bestDegree = degree;
+				}
+			}
+
+			label[best] = next;
+			numbered[best / 64] |= 1L << (best % 64);
+
+			for (int u = 0; u < taxonCount; u++) {
+				if ((adjacent[best][u / 64] & (1L << (u % 64))) != 0
+						&& (numbered[u / 64] & (1L << (u % 64))) == 0) {
+					for (int w = 0; w < words; w++) {
+						adjacent[u][w] |= adjacent[best][w] & ~numbered[w];
+					}
+					adjacent[u][u / 64] &= ~(1L << (u % 64));
+				}
+			}
+		}
+
+		return label;
+	}
+
+	/**
+	 * Creates the lookup tables to convert vectors between the original taxa and the
+	 * new labels.
+	 */
+	private void createMappings() {
+
+		int length = (taxonCount - 1) * (taxonCount - 2) / 2;
+
+		toNewSources = new int[length][];
+		toNewCorrections = new boolean[length];
+		toOldSources = new int[length][];
+		toOldCorrections = new boolean[length];
+
+		DenseVector v = new DenseVector(taxonCount);
+
+		for (int i = 0; i < length; i++) {
+			Triple t = v.indexToTriple(i);
+
+			toNewCorrections[i] = createMapping(v, oldLabel[t.i1], oldLabel[t.i2], oldLabel[t.i3], toNewSources, i);
+			toOldCorrections[i] = createMapping(v, newLabel[t.i1], newLabel[t.i2], newLabel[t.i3], toOldSources, i);
+		}
+	}
+
+	/**
+	 * Determines how the element for the triple <code>(a, b, c)</code> can be computed
+	 * from the stored elements of a vector. This is the same computation as
+	 * {@link DenseVector#getElement(Triple)} does.
+	 *
+	 * @param v A vector over the right amount of taxa, used for the index conversion.
+	 * @param a The first element of the triple.
+	 * @param b The second element of the triple.
+	 * @param c The third element of the triple.
+	 * @param sources The array to put the indices to add in.
+	 * @param index The index in <code>sources</code> to use.
+	 * @return The constant to add.
+	 */
+	private static boolean createMapping(DenseVector v, int a, int b, int c, int[][] sources, int index) {
+
+		Triple t = new Triple(a, b, c);
+		boolean correction = t.makeAscending();
+
+		if (t.i1 == 0) {
+			sources[index] = new int[] {v.tripleToIndex(t)};
+		} else {
+			sources[index] = new int[] {
+				v.tripleToIndex(new Triple(0, t.i1, t.i2)),
+				v.tripleToIndex(new Triple(0, t.i1, t.i3)),
+				v.tripleToIndex(new Triple(0, t.i2, t.i3))
+			};
+		}
+
+		return correction;
+	}
+
+	/**
+	 * Converts a vector using the given lookup tables.
+	 *
+	 * @param v The vector to convert.
+	 * @param sources Either {@link #toNewSources} or {@link #toOldSources}.
+	 * @param corrections Either {@link #toNewCorrections} or {@link #toOldCorrections}.
+	 * @return The converted vector.
+	 */
+	private DenseVector map(DenseVector v, int[][] sources, boolean[] corrections) {
+
+		DenseVector result = new DenseVector(taxonCount);
+
+		for (int i = 0; i < sources.length; i++) {
+			boolean value = corrections[i];
+			for (int source : sources[i]) {
+				value ^= v.getElementOnIndex(source);
+			}
+			if (value) {
+				result.setElementOnIndex(i, true);
+			}
+		}
+
+		return result;
+	}
+}
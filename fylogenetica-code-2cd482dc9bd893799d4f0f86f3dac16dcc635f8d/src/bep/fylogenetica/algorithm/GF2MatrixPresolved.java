@@ -0,0 +1,185 @@
+package bep.fylogenetica.algorithm;
+
+import java.util.ArrayList;
+
+/**
+ * A dense matrix over GF(2) that collapses all rows with exactly two non-zero
+ * elements before the actual reduction.
+ *
+ * <p>Every quartet that contains the base element (taxon 0) results in a row
+ * with two non-zero elements, that is, an equation <code>x<sub>a</sub> + x<sub>b</sub>
+ * = c</code>. Such rows are not added to the matrix, but are kept in a
+ * {@link ParityUnionFind} structure instead. Contradicting equations are detected
+ * immediately when they are added.</p>
+ *
+ * <p>On {@link #rowReduce(boolean)}, the other rows are rewritten in terms of the
+ * roots of the union-find structure. Then only those rows are reduced, and only
+ * on the root columns. Afterwards, the collapsed equations are added back, such that
+ * the resulting matrix is exactly the same as the reduced row-echelon form
+ * {@link GF2MatrixDense} would have given. So all other methods (like
+ * {@link #determineConformingVector()}) can be used as usual.</p>
+ *
+ * <p>Note that the rows only show up in {@link #vectors} after the matrix has been
+ * reduced.</p>
+ */
+public class GF2MatrixPresolved extends GF2MatrixDense {
+
+	/**
+	 * The classes of columns that are connected by the rows with two non-zero
+	 * elements.
+	 */
+	private ParityUnionFind classes;
+
+	/**
+	 * Whether the rows with two non-zero elements contain a contradiction.
+	 */
+	private boolean parityConflict = false;
+
+	/**
+	 * The rows that have more than two non-zero elements. After a reduction, these
+	 * are the reduced rows (which are only non-zero in the root columns).
+	 */
+	private ArrayList<DenseVector> coreVectors = new ArrayList<DenseVector>();
+
+	/**
+	 * The result values belonging to {@link #coreVectors}.
+	 */
+	private ArrayList<Boolean> coreResults = new ArrayList<Boolean>();
+
+	/**
+	 * Creates a new, empty matrix over the given set of taxa.
+	 * @param taxonCount The amount of taxa to construct the matrix for.
+	 */
+	public GF2MatrixPresolved(int taxonCount) {
+		super(taxonCount);
+		classes = new ParityUnionFind(getColumnCount() - 1);
+	}
+
+	/**
+	 * Adds an explicitly-given row to this matrix. If the row has exactly two
+	 * non-zero elements, it is collapsed immediately; otherwise it is kept until
+	 * the next reduction.
+	 *
+	 * @param vector The first part of the row (everything except for the last
+	 * element). This represents the coefficients of the equations.
+	 * @param result The last element of the row. This represents the result.
+	 */
+	@Override
+	public void addRow(DenseVector vector, boolean result) {
+
+		int count = vector.countSetElements();
+
+		if (count == 0) {
+			parityConflict |= result;
+		} else if (count == 2) {
+			int a = vector.nextSetIndex(0);
+			int b = vector.nextSetIndex(a + 1);
+			if (!classes.union(a, b, result)) {
+				parityConflict = true;
+			}
+		} else {
+			coreVectors.add(vector);
+			coreResults.add(result);
+		}
+	}
+
+	/**
+	 * Returns whether the matrix is <i>consistent</i>.
+	 *
+	 * <p>Contrary to the other matrices, contradictions between rows with two
+	 * non-zero elements are detected already when adding them, so for those this
+	 * method can be called before reducing.</p>
+	 *
+	 * @return <code>false</code> if the rows are known to be contradicting,
+	 * <code>true</code> otherwise.
+	 */
+	@Override
+	public boolean isConsistent() {
+		return !parityConflict && super.isConsistent();
+	}
+
+	/**
+	 * Brings the matrix in reduced row-echelon form.
+	 *
+	 * @param debug Whether to debug. This is ignored for this matrix.
+	 */
+	@Override
+	public void rowReduce(boolean debug) {
+
+		int columns = getColumnCount() - 1;
+
+		// substitute every column by its root
+		GF2MatrixDense core = new GF2MatrixDense(taxonCount);
+		for (int i = 0; i < coreVectors.size(); i++) {
+			DenseVector vector = coreVectors.get(i);
+			DenseVector substituted = new DenseVector(taxonCount);
+			boolean result = coreResults.get(i);
+
+			for (int col = vector.nextSetIndex(0); col != -1; col = vector.nextSetIndex(col + 1)) {
+				substituted.flipElementOnIndex(classes.find(col));
+				result ^= classes.parity(col);
+			}
+
+			// appended directly, since addRow inserts at the front (which is slow
+			// for this many rows, and the order does not matter here)
+			core.vectors.add(substituted);
+			core.results.add(result);
+		}
+
+		// reduce the remaining rows; these only have non-zero elements in the root
+		// columns, so the other columns are skipped automatically
+		core.rowReduce(false);
+
+		coreVectors = new ArrayList<DenseVector>();
+		coreResults = new ArrayList<Boolean>();
+
+		// the pivot row of every root that is a pivot
+		DenseVector[] pivotRows = new DenseVector[columns];
+		boolean[] pivotResults = new boolean[columns];
+
+		for (int i = 0; i < core.getRowCount(); i++) {
+			DenseVector vector = core.vectors.get(i);
+			if (vector.isZeroVector()) {
+				parityConflict |= core.results.get(i);
+				continue;
+			}
+			int pivot = vector.nextSetIndex(0);
+			pivotRows[pivot] = vector;
+			pivotResults[pivot] = core.results.get(i);
+			coreVectors.add(vector);
+			coreResults.add(core.results.get(i));
+		}
+
+		// now create the rows in reduced row-echelon form: for a non-root column a with
+		// root r this is x_a + x_r = p, where x_r is eliminated if it is a pivot itself;
+		// the rows of the roots are just the reduced rows
+		vectors = new ArrayList<DenseVector>();
+		results = new ArrayList<Boolean>();
+
+		for (int col = 0; col < columns; col++) {
+			if (pivotRows[col] != null) {
+				vectors.add(pivotRows[col]);
+				results.add(pivotResults[col]);
+			} else if (!classes.isRoot(col)) {
+				int root = classes.find(col);
+				DenseVector vector = new DenseVector(taxonCount);
+				vector.setElementOnIndex(col, true);
+				vector.setElementOnIndex(root, true);
+				boolean result = classes.parity(col);
+
+				if (pivotRows[root] != null) {
+					vector.addVector(pivotRows[root], 0);
+					result ^= pivotResults[root];
+				}
+
+				vectors.add(vector);
+				results.add(result);
+			}
+		}
+
+		if (parityConflict) {
+			vectors.add(new DenseVector(taxonCount));
+			results.add(true);
+		}
+	}
+}
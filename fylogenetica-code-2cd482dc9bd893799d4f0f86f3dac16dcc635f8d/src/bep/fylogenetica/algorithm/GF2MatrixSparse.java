@@ -11,6 +11,7 @@ import java.util.HashMap;
 import javax.imageio.ImageIO;
 
 import bep.fylogenetica.model.Quartet;
+import bep.fylogenetica.model.Witness;
 
 /**
  * A dense matrix over GF(2) for a certain set of taxa.
@@ -354,28 +355,71 @@ public class GF2MatrixSparse extends GF2Matrix{
 			}
 		}
 
-		try {
-			BufferedImage image = toImage();
-			int col = 0;
-			for (int i = 1; i < taxonCount - 1; i++) {
-				for (int j = i + 1; j < taxonCount; j++) {
-					if (!result.getElement(new Triple(0, i, j))) {
-						image.setRGB(2*col, 2*getRowCount(), 0xffffff);
-					}
-					col++;
+		assert conformsToMatrix(result);
+		
+		return result;
+	}
+	
+	/**
+	 * Determines a basis of the kernel of this matrix, directly from the pivot rows.
+	 * 
+	 * <p>Every column that is not a pivot column gives one basis vector: it is 1 on
+	 * that column, and on the pivot column of every pivot row containing that column.</p>
+	 * 
+	 * @return For every column, the basis vectors that are non-zero in that column.
+	 */
+	@Override
+	public long[][] getKernelColumns() {
+		
+		DenseVector indices = new DenseVector(taxonCount);
+		int columns = getColumnCount() - 1;
+		
+		// number the free columns
+		int[] free = new int[columns];
+		SparseVector[] pivotRows = new SparseVector[columns];
+		int freeCount = 0;
+		
+		for (int i = 1; i < taxonCount - 1; i++) {
+			for (int j = i + 1; j < taxonCount; j++) {
+				Triple t = new Triple(0, i, j);
+				int col = indices.tripleToIndex(t);
+				ArrayList<SparseVector> rows = vectors.get(t);
+				if (rows.size() == 1 && rows.get(0).isFirstVector(t)) {
+					pivotRows[col] = rows.get(0);
+					free[col] = -1;
+				} else {
+					free[col] = freeCount++;
 				}
 			}
-			for (int i = 1; i < 2*getColumnCount()+1; i+=2) {
-				image.setRGB(2*col, 2*getRowCount(), 0x7f7f7f);
-			}
-			ImageIO.write(image, "png", new File("C:/Users/20202991/Dropbox/My PC (S20202991)/Desktop/Bep_test/conform.png"));
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
 		
-		assert conformsToMatrix(result);
+		long[][] kernel = new long[columns][(freeCount + 63) / 64];
 		
-		return result;
+		for (int col = 0; col < columns; col++) {
+			if (free[col] != -1) {
+				kernel[col][free[col] / 64] |= 1L << (free[col] % 64);
+			} else {
+				// the other elements of a pivot row are all in free columns
+				ArrayList<Triple> values = pivotRows[col].values;
+				for (int k = 1; k < values.size(); k++) {
+					int f = free[indices.tripleToIndex(values.get(k))];
+					kernel[col][f / 64] |= 1L << (f % 64);
+				}
+			}
+		}
+		
+		return kernel;
+	}
+	
+	/**
+	 * Finds all witnesses, using the kernel determined by {@link #getKernelColumns()}.
+	 * The matrix needs to be in reduced row-echelon form.
+	 * 
+	 * @return A list of all witnesses.
+	 */
+	@Override
+	public ArrayList<Witness> findWitnesses() {
+		return findWitnessesInKernel(getKernelColumns());
 	}
 	
 	/**
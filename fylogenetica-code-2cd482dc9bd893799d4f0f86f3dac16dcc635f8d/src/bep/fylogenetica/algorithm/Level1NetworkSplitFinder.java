@@ -2,6 +2,7 @@ package bep.fylogenetica.algorithm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 
 import bep.fylogenetica.gui.NetworkPanel;
 import bep.fylogenetica.model.Level1Network;
@@ -17,46 +18,18 @@ public class Level1NetworkSplitFinder {
 	
 	/**
 	 * Finds all non-trivial splits in the given data, even crossing ones, that do not
-	 * contain the last taxon on <code>f</code> (that is, <code>f.taxa.get(f.taxa.size() - 1</code>).
+	 * contain the last taxon on <code>f</code> (that is, <code>f.get(f.size() - 1</code>).
 	 * This will be a lateral collection.
 	 * 
+	 * <p>The intervals are tested in parallel, see {@link SplitScanner}.</p>
+	 * 
 	 * @param m A {@link GF2Matrix} representing the affine subspace containing all
 	 * cyclic vectors that satisfy the conditions.
 	 * @param f An arbitrary {@link CyclicOrder} derived from <code>m</code>. 
 	 * @return A set of splits.
 	 */
 	public static ArrayList<int[]> findListOfSplits(CyclicOrder f, DenseVector xf, GF2Matrix m) {
-		
-		ArrayList<int[]> result = new ArrayList<>();
-		
-		for (int start = 0; start < f.taxa.size(); start++) {
-			for (int end = start + 1; end < f.taxa.size(); end++) {
-				if (isSplit(f, xf, m, start, end) && !isTrivialSplit(f.taxa.size(), start, end)) {
-					result.add(new int[]{start, end});
-				}
-			}
-		}
-		
-		return result;
-	}
-	
-	/**
-	 * Returns whether a split is considered to be trivial.
-	 * 
-	 * <p>A split is trivial if one of its sides have 0 or 1 elements.</p>
-	 * 
-	 * @param m The number of taxa.
-	 * @param startIndex The begin index (inclusive).
-	 * @param endIndex The end index (inclusive).
-	 * @return Whether the split is trivial.
-	 */
-	private static boolean isTrivialSplit(int m, int start, int end) {
-		
-		if (((start + m - 1) % m) == (end % m) || (start % m) == (end % m) || (start % m) == ((end + m - 1) % m)) {
-			return true;
-		}
-		
-		return false;
+		return SplitScanner.findListOfSplits(f, m);
 	}
 
 	/**
@@ -90,10 +63,10 @@ public class Level1NetworkSplitFinder {
 	public static Level1Network reconstructNetwork(CyclicOrder f, DenseVector xf, GF2Matrix m) throws NotCyclicException {
 		
 		// initialization
-		Level1Network[] n = new Level1Network[f.taxa.size()];
+		Level1Network[] n = new Level1Network[f.size()];
 		
-		for (int i = 0; i < f.taxa.size(); i++) {
-			n[i] = new Level1Network(f.taxa.get(i));
+		for (int i = 0; i < f.size(); i++) {
+			n[i] = new Level1Network(f.get(i));
 		}
 		
 		Level1Network network = new Level1Network(true, n);
@@ -104,7 +77,7 @@ public class Level1NetworkSplitFinder {
 		for (int i = 0; i < splits.size(); i++) {
 			int[] split = splits.get(i);
 			
-			Level1Network[] anchestor = searchCommonAnchestor(network, split, f);
+			Level1Network[] anchestor = searchCommonAnchestor(network, taxaInSplit(split, f));
 			
 			// this should not happen by Lemma 5.9 c)
 			if (anchestor.length <= 2) {
@@ -144,52 +117,48 @@ public class Level1NetworkSplitFinder {
 	 * <code>&gt;= 0</code> elements are the subnetworks of the common anchestor that
 	 * contain exactly the taxa of the split.</p>
 	 * 
+	 * <p>Using {@link Level1Network#getTaxa()}, it is known which subnetworks contain
+	 * taxa of the split, so there is no need to search through the whole network: we
+	 * descend into the only subnetwork that contains taxa of the split, until there
+	 * are several of them.</p>
+	 * 
 	 * @param n The network to search in.
-	 * @param split The split to search the common anchestor for.
+	 * @param split The taxa of the split to search the common anchestor for.
 	 * @return An array of level-1-networks as described above, or <code>null</code> if the
 	 * level-1-network doesn't contain any of the elements in the split.
 	 */
-	private static Level1Network[] searchCommonAnchestor(Level1Network n, int[] split, CyclicOrder f) {
+	private static Level1Network[] searchCommonAnchestor(Level1Network n, BitSet split) {
 		
-		if (n.type == Level1NetworkType.SINGLETON) {
-			if (containedInSplit(n.taxon, split, f)) {
-				return new Level1Network[] {n};
-			} else {
-				return null;
-			}
+		if (!n.getTaxa().intersects(split)) {
+			return null;
 		}
 		
-		if (n.type == Level1NetworkType.EDGE) {
-			Level1Network[] sub1 = searchCommonAnchestor(n.subNetwork1, split, f);
-			Level1Network[] sub2 = searchCommonAnchestor(n.subNetwork2, split, f);
-			if (sub1 == null && sub2 == null) {
-				return null;
-			} else if (sub1 == null) {
-				return sub2;
-			} else if (sub2 == null) {
-				return sub1;
+		while (true) {
+			
+			if (n.type == Level1NetworkType.SINGLETON) {
+				return new Level1Network[] {n};
+			}
+			
+			ArrayList<Level1Network> children;
+			if (n.type == Level1NetworkType.EDGE) {
+				children = new ArrayList<Level1Network>();
+				children.add(n.subNetwork1);
+				children.add(n.subNetwork2);
 			} else {
-				return new Level1Network[] {n, n.subNetwork1, n.subNetwork2};
+				children = n.connectedNetworks;
 			}
-		}
-		
-		if (n.type == Level1NetworkType.BLOB || n.type == Level1NetworkType.CIRCLE) {
 			
 			ArrayList<Level1Network> containingChildren = new ArrayList<Level1Network>();
 			
-			for (Level1Network child : n.connectedNetworks) {
-				Level1Network[] childAnchestor = searchCommonAnchestor(child, split, f);
-				if (childAnchestor != null) {
+			for (Level1Network child : children) {
+				if (child.getTaxa().intersects(split)) {
 					containingChildren.add(child);
 				}
 			}
 			
-			if (containingChildren.isEmpty()) {
-				return null;
-			}
-			
 			if (containingChildren.size() == 1) {
-				return searchCommonAnchestor(containingChildren.get(0), split, f);
+				n = containingChildren.get(0);
+				continue;
 			}
 			
 			Level1Network[] result = new Level1Network[containingChildren.size() + 1];
@@ -199,47 +168,23 @@ public class Level1NetworkSplitFinder {
 			}
 			return result;
 		}
-		
-		return null;
 	}
 	
-	private static boolean containedInSplit(int taxon, int[] split, CyclicOrder f) {
-		
-		for (int i = split[0]; i < split[1]; i++) {
-			if (f.taxa.get(i) == taxon) {
-				return true;
-			}
-		}
-		
-		return false;
-	}
-
 	/**
-	 * Determines whether the taxa on a given part of a {@link CyclicOrder} form
-	 * a split.
+	 * Returns the taxa that are in the given split.
 	 * 
-	 * <p>For this method, <code>startIndex</code> may be larger than <code>endIndex</code>.</p>
-	 * 
-	 * @param m A {@link GF2Matrix} representing the affine subspace containing all
-	 * cyclic vectors that satisfy the conditions.
-	 * @param f An arbitrary {@link CyclicOrder} derived from <code>m</code>. 
-	 * @param startIndex The begin index (inclusive).
-	 * @param endIndex The end index (exclusive).
-	 * @return Whether the taxa are a split.
+	 * @param split The split, as an interval on <code>f</code>.
+	 * @param f The cyclic order.
+	 * @return A set containing the taxa on positions <code>[split[0], split[1])</code>.
 	 */
-	private static boolean isSplit(CyclicOrder f, DenseVector xf, GF2Matrix m, int startIndex, int endIndex) {
+	private static BitSet taxaInSplit(int[] split, CyclicOrder f) {
 		
-		// in this case, the split "crosses" 0, but if one side is a split, the other is too
-		if (startIndex > endIndex) {
-			int h = endIndex;
-			endIndex = startIndex;
-			startIndex = h;
-		}
+		BitSet result = new BitSet();
 		
-		CyclicOrder g = new CyclicOrder(f);
-		g.reverse(startIndex, endIndex);
-		DenseVector xg = g.determineVector();
+		for (int i = split[0]; i < split[1]; i++) {
+			result.set(f.get(i));
+		}
 		
-		return m.conformsToMatrix(xg);
+		return result;
 	}
 }
@@ -0,0 +1,252 @@
+package bep.fylogenetica.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * A heuristic that picks a cyclic order from the constraints that are fixed by a
+ * reduced {@link GF2Matrix}. This is used when the conforming vector is not cyclic,
+ * to try a cyclic order directly before sampling other vectors.
+ *
+ * <p>With taxon 0 as the anchor, the element for <code>(0, i, j)</code> tells whether
+ * <code>i</code> comes before <code>j</code> (see {@link DenseVector#determineOrder()}).
+ * Some of these elements are the same in every conforming vector, possibly up to
+ * complementing all of them at once (which just mirrors the order). Those elements
+ * are precedence constraints on the taxa <code>1, ..., n - 1</code>, and every cyclic
+ * order in the space satisfies them. This class collects these constraints in a
+ * directed graph, and:
+ * <ul>
+ * <li>detects a cycle in the graph, which means that no cyclic order satisfies the
+ * data;</li>
+ * <li>picks an order that satisfies the constraints, by a topological sort in which
+ * the conforming vector breaks the ties.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>This is not a complete description of the cyclic orders in the space (such as a
+ * PC-tree would give): only one group of fixed elements is used, so the order that
+ * is picked may not conform to the matrix even if some cyclic order does, and
+ * nothing is said about how many orders there are. A cycle, on the other hand, does
+ * show that there is no cyclic order.</p>
+ *
+ * <h3>Implementation details</h3>
+ * <p>The elements that are fixed relative to each other are found using the kernel
+ * of the matrix ({@link GF2Matrix#getKernelColumns()}): two elements always have
+ * the same sum if and only if the same basis vectors of the kernel change them. So
+ * the columns are grouped by their kernel bitsets, and the largest group gives the
+ * constraints. The order that is picked is only returned if its vector conforms to
+ * the matrix. This takes <code>O(n<sup>2</sup>)</code> time apart from computing the kernel,
+ * which is linear in the number of elements.</p>
+ */
+public class OrderConstraints {
+
+	/**
+	 * The number of taxa.
+	 */
+	private int taxonCount;
+
+	/**
+	 * The matrix the constraints are taken from.
+	 */
+	private GF2Matrix m;
+
+	/**
+	 * The conforming vector, used for the constraints and for breaking ties.
+	 */
+	private DenseVector v;
+
+	/**
+	 * For every taxon, the taxa that have to come after it.
+	 */
+	private ArrayList<ArrayList<Integer>> successors;
+
+	/**
+	 * For every taxon, the number of taxa that have to come before it.
+	 */
+	private int[] predecessorCount;
+
+	/**
+	 * The number of fixed elements, that is, the number of constraints.
+	 */
+	private int constraintCount;
+
+	/**
+	 * The taxa in a topological order of the constraints, or <code>null</code> if
+	 * the constraints contain a cycle.
+	 */
+	private int[] sorted;
+
+	/**
+	 * Collects the constraints of the given matrix.
+	 *
+	 * @param m The matrix. It must be in reduced row-echelon form.
+	 * @param v A vector that conforms to <code>m</code>.
+	 */
+	public OrderConstraints(GF2Matrix m, DenseVector v) {
+		this.m = m;
+		this.v = v;
+		taxonCount = v.taxonCount;
+
+		successors = new ArrayList<ArrayList<Integer>>();
+		for (int i = 0; i < taxonCount; i++) {
+			successors.add(new ArrayList<Integer>());
+		}
+		predecessorCount = new int[taxonCount];
+
+		findConstraints();
+		sort();
+	}
+
+	/**
+	 * Finds the largest group of columns with the same kernel bitset, and adds a
+	 * constraint for every column in that group.
+	 */
+	private void findConstraints() {
+
+		final long[][] kernel = m.getKernelColumns();
+
+		ArrayList<Integer> columns = new ArrayList<Integer>();
+		for (int c = 0; c < kernel.length; c++) {
+			columns.add(c);
+		}
+
+		Collections.sort(columns, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				long[] x = kernel[a];
+				long[] y = kernel[b];
+				for (int i = 0; i < x.length; i++) {
+					if (x[i] != y[i]) {
+						return Long.compareUnsigned(x[i], y[i]);
+					}
+				}
+				return Integer.compare(a, b);
+			}
+		});
+
+		// the largest run of equal bitsets (the first one, if there are several)
+		int bestStart = 0;
+		int bestLength = 0;
+		for (int start = 0; start < columns.size(); ) {
+			int end = start + 1;
+			while (end < columns.size() && Arrays.equals(kernel[columns.get(start)], kernel[columns.get(end)])) {
+				end++;
+			}
+			if (end - start > bestLength) {
+				bestStart = start;
+				bestLength = end - start;
+			}
+			start = end;
+		}
+
+		for (int k = bestStart; k < bestStart + bestLength; k++) {
+			Triple t = v.indexToTriple(columns.get(k));
+			if (v.isBefore(t.i2, t.i3)) {
+				addConstraint(t.i2, t.i3);
+			} else {
+				addConstraint(t.i3, t.i2);
+			}
+		}
+	}
+
+	/**
+	 * Adds the constraint that taxon <code>a</code> comes before taxon <code>b</code>.
+	 *
+	 * @param a The first taxon.
+	 * @param b The second taxon.
+	 */
+	private void addConstraint(int a, int b) {
+		successors.get(a).add(b);
+		predecessorCount[b]++;
+		constraintCount++;
+	}
+
+	/**
+	 * Sorts the taxa topologically. Of the taxa whose predecessors are all placed,
+	 * the one that comes first according to {@link #v} is placed next.
+	 */
+	private void sort() {
+
+		int[] remaining = Arrays.copyOf(predecessorCount, taxonCount);
+		ArrayList<Integer> available = new ArrayList<Integer>();
+		for (int i = 1; i < taxonCount; i++) {
+			if (remaining[i] == 0) {
+				available.add(i);
+			}
+		}
+
+		int[] result = new int[taxonCount];
+		result[0] = 0;
+
+		for (int p = 1; p < taxonCount; p++) {
+
+			if (available.isEmpty()) {
+				// all remaining taxa are on a cycle
+				return;
+			}
+
+			int best = 0;
+			for (int k = 1; k < available.size(); k++) {
+				if (v.isBefore(available.get(k), available.get(best))) {
+					best = k;
+				}
+			}
+
+			int taxon = available.get(best);
+			available.set(best, available.get(available.size() - 1));
+			available.remove(available.size() - 1);
+			result[p] = taxon;
+
+			for (int next : successors.get(taxon)) {
+				remaining[next]--;
+				if (remaining[next] == 0) {
+					available.add(next);
+				}
+			}
+		}
+
+		sorted = result;
+	}
+
+	/**
+	 * Returns the number of constraints that were found.
+	 * @return The number of constraints.
+	 */
+	public int getConstraintCount() {
+		return constraintCount;
+	}
+
+	/**
+	 * Returns whether the constraints contain a cycle. In that case, there is no
+	 * cyclic order in the space.
+	 *
+	 * @return <code>true</code> if there is a cycle, <code>false</code> otherwise.
+	 */
+	public boolean hasCycle() {
+		return sorted == null;
+	}
+
+	/**
+	 * Determines a cyclic order that satisfies the constraints, and checks that its
+	 * vector conforms to the matrix.
+	 *
+	 * @return The cyclic order, or <code>null</code> if the constraints contain a
+	 * cycle or if the order that was picked doesn't conform to the matrix.
+	 */
+	public CyclicOrder determineOrder() {
+
+		if (hasCycle()) {
+			return null;
+		}
+
+		CyclicOrder result = new CyclicOrder(Arrays.copyOf(sorted, taxonCount));
+
+		if (!m.conformsToMatrix(result.determineVector())) {
+			return null;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,136 @@
+package bep.fylogenetica.algorithm;
+
+/**
+ * A union-find structure over the columns of a {@link GF2Matrix} that also keeps
+ * track of the parity between the elements of a class.
+ *
+ * <p>Every union corresponds to an equation <code>x<sub>a</sub> + x<sub>b</sub> = p</code>.
+ * For every column <code>a</code> the structure maintains its root <code>r</code> and
+ * the parity <code>p</code> such that <code>x<sub>a</sub> = x<sub>r</sub> + p</code>.</p>
+ *
+ * <p>The root of a class is always the <i>largest</i> column in that class. This is
+ * used by {@link GF2MatrixPresolved} to turn the collapsed equations back into
+ * reduced row-echelon form: the equation of every non-root column then has that
+ * column as its leading element.</p>
+ */
+public class ParityUnionFind {
+
+	/**
+	 * The parent of every element. Roots are their own parent.
+	 */
+	private int[] parent;
+
+	/**
+	 * The parity of every element with respect to its parent.
+	 */
+	private boolean[] parity;
+
+	/**
+	 * Creates a new structure in which every element is in a class of its own.
+	 *
+	 * @param size The number of elements.
+	 */
+	public ParityUnionFind(int size) {
+		parent = new int[size];
+		parity = new boolean[size];
+
+		for (int i = 0; i < size; i++) {
+			parent[i] = i;
+		}
+	}
+
+	/**
+	 * Returns the number of elements.
+	 * @return The number of elements.
+	 */
+	public int size() {
+		return parent.length;
+	}
+
+	/**
+	 * Finds the root of the class of the given element. On the way, the path to
+	 * the root is compressed.
+	 *
+	 * @param a The element.
+	 * @return The root of the class <code>a</code> is in.
+	 */
+	public int find(int a) {
+
+		int root = a;
+		boolean p = false;
+		while (parent[root] != root) {
+			p ^= parity[root];
+			root = parent[root];
+		}
+
+		// second pass: point everything on the path directly to the root,
+		// and update the parities accordingly
+		while (parent[a] != root && a != root) {
+			int next = parent[a];
+			boolean nextP = p ^ parity[a];
+			parent[a] = root;
+			parity[a] = p;
+			a = next;
+			p = nextP;
+		}
+
+		return root;
+	}
+
+	/**
+	 * Returns the parity of an element with respect to the root of its class,
+	 * that is, the <code>p</code> such that <code>x<sub>a</sub> = x<sub>r</sub> + p</code>.
+	 *
+	 * @param a The element.
+	 * @return The parity.
+	 */
+	public boolean parity(int a) {
+		int root = find(a);
+
+		// after find(), a is either the root or directly connected to it
+		return a != root && parity[a];
+	}
+
+	/**
+	 * Returns whether the given element is the root of its class.
+	 *
+	 * @param a The element.
+	 * @return <code>true</code> if <code>a</code> is a root, <code>false</code> otherwise.
+	 */
+	public boolean isRoot(int a) {
+		return parent[a] == a;
+	}
+
+	/**
+	 * Adds the equation <code>x<sub>a</sub> + x<sub>b</sub> = p</code>.
+	 *
+	 * @param a The first element.
+	 * @param b The second element.
+	 * @param p The parity between the elements.
+	 * @return <code>false</code> if this equation contradicts the equations that
+	 * were added before, <code>true</code> otherwise. In the first case, the
+	 * structure is not modified.
+	 */
+	public boolean union(int a, int b, boolean p) {
+
+		int rootA = find(a);
+		int rootB = find(b);
+		boolean parityA = parity(a);
+		boolean parityB = parity(b);
+
+		if (rootA == rootB) {
+			return (parityA ^ parityB) == p;
+		}
+
+		// the largest element becomes the root (see the class comment)
+		if (rootA < rootB) {
+			parent[rootA] = rootB;
+			parity[rootA] = parityA ^ parityB ^ p;
+		} else {
+			parent[rootB] = rootA;
+			parity[rootB] = parityA ^ parityB ^ p;
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,141 @@
+package bep.fylogenetica.algorithm;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the intervals <code>[start, end)</code> on a {@link CyclicOrder} whose taxa form
+ * a split. This is used by both {@link TreeSplitFinder} and
+ * {@link Level1NetworkSplitFinder}.
+ *
+ * <h3>Implementation details</h3>
+ * <p>There are <code>O(n<sup>2</sup>)</code> intervals. For every interval, the vector
+ * of the cyclic order with that interval reversed is checked against the matrix.
+ * This vector is not built from scratch: it is the vector of <code>f</code> plus the
+ * triples with at least two taxa in the interval (see
+ * {@link CyclicOrder#determineReversalDelta(int, int)}), and for a fixed start index
+ * those triples are updated one taxon at a time when the end index grows.</p>
+ *
+ * <p>The tests are independent of each other, so they are spread over a fork-join
+ * pool: the starting indices are divided recursively, and every task tests all
+ * intervals with its starting indices. Every starting index gets its own list of
+ * splits, and the lists are joined in order afterwards, so the result doesn't depend
+ * on the scheduling.</p>
+ *
+ * <p>The matrix is only read during the tests, using
+ * {@link GF2Matrix#conformsToMatrix(DenseVector)}. Therefore it must already be
+ * reduced, and it may not be changed during the scan.</p>
+ */
+public class SplitScanner {
+
+	/**
+	 * The number of starting indices below which a task doesn't divide itself
+	 * any further.
+	 */
+	private static final int THRESHOLD = 2;
+
+	/**
+	 * Returns all non-trivial splits, even crossing ones, that do not contain the
+	 * last taxon on the cyclic order.
+	 *
+	 * <p>The splits are returned as <code>[start, end)</code> intervals, ordered by
+	 * <code>start</code> first and <code>end</code> second.</p>
+	 *
+	 * @param f An arbitrary {@link CyclicOrder} derived from <code>m</code>.
+	 * @param m A {@link GF2Matrix} representing the affine subspace containing all
+	 * cyclic vectors that satisfy the conditions. This matrix must be reduced.
+	 * @return A list of splits.
+	 */
+	public static ArrayList<int[]> findListOfSplits(CyclicOrder f, GF2Matrix m) {
+
+		int size = f.size();
+		@SuppressWarnings("unchecked")
+		ArrayList<int[]>[] found = new ArrayList[size];
+
+		ForkJoinPool.commonPool().invoke(new IntervalTask(f, f.determineVector(), m, found, 0, size));
+
+		ArrayList<int[]> result = new ArrayList<>();
+		for (ArrayList<int[]> splits : found) {
+			result.addAll(splits);
+		}
+		return result;
+	}
+
+	/**
+	 * A task that tests all intervals with a starting index in
+	 * <code>[startFrom, startTo)</code>.
+	 */
+	private static class IntervalTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final CyclicOrder f;
+		private final DenseVector xf;
+		private final GF2Matrix m;
+		private final ArrayList<int[]>[] found;
+		private final int startFrom;
+		private final int startTo;
+
+		IntervalTask(CyclicOrder f, DenseVector xf, GF2Matrix m, ArrayList<int[]>[] found, int startFrom, int startTo) {
+			this.f = f;
+			this.xf = xf;
+			this.m = m;
+			this.found = found;
+			this.startFrom = startFrom;
+			this.startTo = startTo;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (startTo - startFrom <= THRESHOLD) {
+				int size = f.size();
+				DenseVector xg = new DenseVector(size);
+				for (int start = startFrom; start < startTo; start++) {
+
+					found[start] = new ArrayList<>();
+
+					// the block is extended by one taxon at a time
+					DenseVector delta = new DenseVector(size);
+					DenseVector members = new DenseVector(size);
+
+					for (int end = start + 1; end < size; end++) {
+						delta.extendReversal(members, f.get(end - 1));
+						if (isTrivialSplit(size, start, end)) {
+							continue;
+						}
+						xg.setToSum(xf, delta);
+						if (m.conformsToMatrix(xg)) {
+							found[start].add(new int[]{start, end});
+						}
+					}
+				}
+				return;
+			}
+
+			int middle = (startFrom + startTo) / 2;
+			invokeAll(new IntervalTask(f, xf, m, found, startFrom, middle),
+					new IntervalTask(f, xf, m, found, middle, startTo));
+		}
+	}
+
+	/**
+	 * Returns whether a split is considered to be trivial.
+	 *
+	 * <p>A split is trivial if one of its sides have 0 or 1 elements.</p>
+	 *
+	 * @param m The number of taxa.
+	 * @param startIndex The begin index (inclusive).
+	 * @param endIndex The end index (exclusive).
+	 * @return Whether the split is trivial.
+	 */
+	static boolean isTrivialSplit(int m, int start, int end) {
+
+		if (((start + m - 1) % m) == (end % m) || (start % m) == (end % m) || (start % m) == ((end + m - 1) % m)) {
+			return true;
+		}
+
+		return false;
+	}
+}
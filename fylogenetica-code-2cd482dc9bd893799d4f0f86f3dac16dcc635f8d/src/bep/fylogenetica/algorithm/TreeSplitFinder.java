@@ -1,6 +1,5 @@
 package bep.fylogenetica.algorithm;
 
-import java.lang.Enum.EnumDesc;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -24,105 +23,132 @@ public class TreeSplitFinder {
 	 * @param m A {@link GF2Matrix} representing the affine subspace containing all
 	 * cyclic vectors that satisfy the conditions.
 	 * @param f An arbitrary {@link CyclicOrder} derived from <code>m</code>. 
-	 * @return A set of splits.
+	 * @return The tree, or <code>null</code> if the splits are not those of a tree.
 	 */
 	public static Tree findSplits(CyclicOrder f, DenseVector xf, GF2Matrix m) {
 		
 		ArrayList<int[]> splits = findListOfSplits(f, xf, m);
-		if (splits == null || splits.size() != f.taxa.size()-3) {
+		if (splits == null || splits.size() != f.size()-3) {
 			return null;
 		}
-		Tree result = findSplitsRecursive(f, xf, m, 0, f.taxa.size());
 		
-		return result;
+		return createTreeFromSplits(f, splits);
 	}
 
 	/**
-	 * Creates the tree corresponding to the set of all splits, given that no splits are overlapping
-	 * @param f
-	 * @param splits
-	 * @param used
-	 * @param startIndex
-	 * @param endIndex
-	 * @return
+	 * Creates the tree corresponding to a set of splits.
+	 * 
+	 * <p>The splits that don't overlap form a laminar family of intervals: two of them
+	 * are either disjoint, or one is contained in the other. Together with the
+	 * singletons and the interval <code>[0, n - 1)</code>, this is the set of clusters
+	 * of the tree, rooted at the last taxon on <code>f</code>. The tree is built in one
+	 * pass over the positions, with a stack containing the intervals that are open at
+	 * the current position (the innermost one on top).</p>
+	 * 
+	 * <p>For this, the intervals that start at the same position are visited from the
+	 * largest to the smallest. Since the list is ordered by start position and then by
+	 * end position, this just means that every run of equal start positions is
+	 * visited backwards. So the whole method takes <code>O(n + splits)</code>.</p>
+	 * 
+	 * @param f The {@link CyclicOrder} the splits are on.
+	 * @param splits The non-trivial splits, as <code>[start, end)</code> intervals
+	 * not containing the last position, ordered like {@link #findListOfSplits(CyclicOrder,
+	 * DenseVector, GF2Matrix)} does.
+	 * @return The tree, or <code>null</code> if the splits don't form a binary tree (that
+	 * is, if they overlap, or if there are too few of them).
 	 */
-	private static Tree createTreeFromSplitsRecursive(CyclicOrder f, ArrayList<int[]> splits, boolean[] used, int startIndex, int endIndex, int taxonCount) {
-		// base case: only one taxon
-		if (startIndex == endIndex) {
-			return new Tree(f.taxa.get(startIndex));
-		}
+	public static Tree createTreeFromSplits(CyclicOrder f, ArrayList<int[]> splits) {
 		
-		// base case: only two taxa
-		if ((startIndex + 1)%taxonCount == endIndex) {
-			return new Tree(new Tree(f.taxa.get(startIndex)), new Tree(f.taxa.get(endIndex)));
+		int n = f.size();
+		if (n == 1) {
+			return new Tree(f.get(0));
 		}
 		
-		int[] maxSplit = new int[2];
-		int index = -1;
-		for (int i = 0; i < splits.size(); i++) {
-			int[] split = splits.get(i);
-			if (!used[i] && (split[0]-startIndex+taxonCount)%taxonCount <= (endIndex-startIndex+taxonCount)%taxonCount
-					&& (split[1]-startIndex+taxonCount)%taxonCount <= (endIndex-startIndex+taxonCount)%taxonCount
-					&& (split[1]-split[0]+taxonCount)%taxonCount > (maxSplit[1]-maxSplit[0]+taxonCount)%taxonCount) {
-				maxSplit = split;
-				index = i;
+		// the open intervals: their end positions, and the subtrees found inside them
+		int[] ends = new int[n];
+		Tree[] first = new Tree[n];
+		Tree[] second = new Tree[n];
+		int top = 0;
+		ends[0] = n - 1;
+		
+		int next = 0;
+		
+		for (int position = 0; position < n - 1; position++) {
+			
+			// open the intervals starting here, largest first
+			int runEnd = next;
+			while (runEnd < splits.size() && splits.get(runEnd)[0] == position) {
+				runEnd++;
 			}
-		}
-
-		if(index == -1) {
-			System.out.println(startIndex + " " + endIndex);
-		}
-		used[index] = true;
-		int[] otherSplit = new int[2];
-		if (maxSplit[0] == startIndex) {
-			otherSplit[0] = maxSplit[1]+1;
-			otherSplit[1] = endIndex;
-		} else if (maxSplit[1] == endIndex) {
-			otherSplit[0] = startIndex;
-			otherSplit[1] = maxSplit[0]-1;
-		} else {
-			otherSplit[0] = (maxSplit[1]+1)%taxonCount;
-			otherSplit[1] = (maxSplit[0]-1+taxonCount)%taxonCount;
-		}
-
-		for (int i = 0; i < splits.size(); i++) {
-			int[] split = splits.get(i);
-			if (split[0] == otherSplit[0] && split[1] == otherSplit[1]) {
-				used[i] = true;
-				break;
+			for (int i = runEnd - 1; i >= next; i--) {
+				int end = splits.get(i)[1];
+				if (end > ends[top]) {
+					return null;
+				}
+				top++;
+				ends[top] = end;
+				first[top] = null;
+				second[top] = null;
+			}
+			next = runEnd;
+			
+			// add the taxon, and close the intervals ending after it
+			Tree tree = new Tree(f.get(position));
+			while (true) {
+				if (first[top] == null) {
+					first[top] = tree;
+				} else if (second[top] == null) {
+					second[top] = tree;
+				} else {
+					return null;
+				}
+				
+				if (top == 0 || ends[top] != position + 1) {
+					break;
+				}
+				
+				if (second[top] == null) {
+					return null;
+				}
+				tree = new Tree(first[top], second[top]);
+				top--;
 			}
 		}
-
-		Tree subTree1 = createTreeFromSplitsRecursive(f, splits, used, maxSplit[0], maxSplit[1], taxonCount);
-		Tree subTree2 = createTreeFromSplitsRecursive(f, splits, used, otherSplit[0], otherSplit[1], taxonCount);
-		return new Tree(subTree1, subTree2);
+		
+		if (next != splits.size()) {
+			return null;
+		}
+		
+		// the interval [0, n - 1) is joined with the last taxon
+		Tree rest = second[0] == null ? first[0] : new Tree(first[0], second[0]);
+		
+		return new Tree(rest, new Tree(f.get(n - 1)));
 	}
 
 	/**
 	 * Finds all non-trivial splits in the given data, even crossing ones, that do not
-	 * contain the last taxon on <code>f</code> (that is, <code>f.taxa.get(f.taxa.size() - 1</code>).
+	 * contain the last taxon on <code>f</code> (that is, <code>f.get(f.size() - 1</code>).
 	 * This will be a lateral collection.
 	 * 
+	 * <p>The intervals are tested in parallel, see {@link SplitScanner}. Afterwards
+	 * it is checked that no two splits overlap.</p>
+	 * 
 	 * @param m A {@link GF2Matrix} representing the affine subspace containing all
 	 * cyclic vectors that satisfy the conditions.
 	 * @param f An arbitrary {@link CyclicOrder} derived from <code>m</code>. 
-	 * @return A set of splits.
+	 * @return A set of splits, or <code>null</code> if two of them overlap.
 	 */
 	public static ArrayList<int[]> findListOfSplits(CyclicOrder f, DenseVector xf, GF2Matrix m) {
 		
-		ArrayList<int[]> result = new ArrayList<>();
+		ArrayList<int[]> result = SplitScanner.findListOfSplits(f, m);
 		
-		for (int start = 0; start < f.taxa.size(); start++) {
-			for (int end = start + 1; end < f.taxa.size(); end++) {
-				if (!isTrivialSplit(f.taxa.size(), start, end) && isSplit(f, xf, m, start, end)) {
-					int[] newSplit = new int[]{start, end};
-					for (int[] split : result) {
-						if (overlap(split, newSplit)) {
-							//System.out.println(Arrays.toString(split) + " " + Arrays.toString(newSplit) + " splits with overlap");
-							return null;
-						}
-					}
-					result.add(newSplit);
+		// the splits of a tree are compatible, so overlapping splits mean that the
+		// data doesn't come from a tree
+		for (int i = 0; i < result.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				if (overlap(result.get(j), result.get(i))) {
+					//System.out.println(Arrays.toString(result.get(j)) + " " + Arrays.toString(result.get(i)) + " splits with overlap");
+					return null;
 				}
 			}
 		}
@@ -130,112 +156,8 @@ public class TreeSplitFinder {
 		return result;
 	}
 
-	/**
-	 * Returns whether a split is considered to be trivial.
-	 * 
-	 * <p>A split is trivial if one of its sides have 0 or 1 elements.</p>
-	 * 
-	 * @param m The number of taxa.
-	 * @param startIndex The begin index (inclusive).
-	 * @param endIndex The end index (exclusive).
-	 * @return Whether the split is trivial.
-	 */
-	private static boolean isTrivialSplit(int m, int start, int end) {
-		
-		if (((start + m - 1) % m) == (end % m) || (start % m) == (end % m) || (start % m) == ((end + m - 1) % m)) {
-			return true;
-		}
-		
-		return false;
-	}
-
 	private static boolean overlap(int[] split1, int[] split2) {
 		return (split1[0] < split2[0] && split2[0] < split1[1] && split1[1] < split2[1]) ||
 				(split2[0] < split1[0] && split1[0] < split2[1] && split2[1] < split1[1]);
 	}
-
-	/**
-	 * Finds splits in the [<code>beginIndex</code>, <code>endIndex</code>] items
-	 * on the {@link CyclicOrder}.
-	 * Does not look out for non cyclicity of the dense vector!!!
-	 * 
-	 * @param m A {@link GF2Matrix} representing the affine subspace containing all
-	 * cyclic vectors that satisfy the conditions.
-	 * @param f An arbitrary {@link CyclicOrder} derived from <code>m</code>. 
-	 * @param startIndex The begin index (inclusive).
-	 * @param endIndex The end index (inclusive).
-	 * @return A tree with the splits. (TODO a tree of a list of splits needed?)
-	 */
-	private static Tree findSplitsRecursive(CyclicOrder f, DenseVector xf, GF2Matrix m, int startIndex, int endIndex) {
-		
-		assert endIndex - startIndex >= 0;
-		// base case: only one taxon
-		if (startIndex == endIndex - 1) {
-			return new Tree(f.taxa.get(startIndex));
-		}
-		
-		// base case: only two taxa
-		if (startIndex == endIndex - 2) {
-			return new Tree(new Tree(f.taxa.get(startIndex)), new Tree(f.taxa.get(endIndex-1)));
-		}
-
-		//System.out.println();
-		//System.out.println("finding splits in [" + startIndex + "-" + endIndex + "]:");
-		
-		for (int i = startIndex+1; i < endIndex; i++) {
-			
-			//System.out.println(" * trying [" + startIndex + "-" + i + "]:");
-			
-			if (isSplit(f, xf, m, startIndex, i)) {
-				
-				//System.out.println("   this is a split!");
-
-				//System.out.println("   verifying that [" + (i + 1) + "-" + endIndex + "] is also a split:");
-				if (!isSplit(f, xf, m, i, endIndex)) {
-					//System.out.println("   it isn't, so this is not an acceptable split");
-					continue;
-				}
-				//System.out.println("   fine, it is");
-
-				Tree subTree1 = findSplitsRecursive(f, xf, m, startIndex, i);
-				Tree subTree2 = findSplitsRecursive(f, xf, m, i, endIndex);
-				
-				return new Tree(subTree1, subTree2);
-			}
-			
-			//System.out.println("   no split");
-		}
-		
-		System.out.println(f);
-		throw new RuntimeException("There was no split found in a part of the cyclic ordering!\n" +
-				"This happened in part [" + startIndex + ", " + endIndex + "] of the cyclic ordering (both inclusive).\n" +
-				"Now I don't know what to do anymore.");
-	}
-	
-	/**
-	 * Determines whether the taxa on a given part of a {@link CyclicOrder} form
-	 * a split.
-	 * 
-	 * @param m A {@link GF2Matrix} representing the affine subspace containing all
-	 * cyclic vectors that satisfy the conditions.
-	 * @param f An arbitrary {@link CyclicOrder} derived from <code>m</code>. 
-	 * @param startIndex The begin index (inclusive).
-	 * @param endIndex The end index (exclusive).
-	 * @return Whether the taxa are a split.
-	 */
-	private static boolean isSplit(CyclicOrder f, DenseVector xf, GF2Matrix m, int startIndex, int endIndex) {
-		
-		//System.out.println("    - circular ordering was " + f.toString());
-		if(startIndex > endIndex) {
-			int temp = startIndex;
-			startIndex = endIndex;
-			endIndex = temp;
-		}
-		CyclicOrder g = new CyclicOrder(f);
-		g.reverse(startIndex, endIndex);
-		//System.out.println("    - and after reversing " + g.toString());
-		DenseVector xg = g.determineVector();
-		
-		return m.conformsToMatrix(xg);
-	}
 }
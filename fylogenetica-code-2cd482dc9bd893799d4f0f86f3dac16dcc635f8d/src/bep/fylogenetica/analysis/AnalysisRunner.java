@@ -29,6 +29,7 @@ public class AnalysisRunner {
 		//PerformanceOnTreesAnalysis.analyze();
 		//AccuracyOnTreesAnalysis.analyze25Taxa();
 		//AccuracyOnTreesAnalysis.analyzeVaryingTaxa();
+		//EngineAnalysis.analyze();
 
 		// Inference analysis with multithreading
 		/*
@@ -51,7 +52,7 @@ public class AnalysisRunner {
 			for (int taxa = minTaxa; taxa <= maxTaxa; taxa++) {
 				new DenseVector(taxa);
 				for (int i = 0; i < threadCount; i++) {
-					analyzers[i][taxa-minTaxa] = new InferenceAnalysis(taxa, maxInference, iterations/threadCount, f.model.inferences, random, doneCount, total, time);
+					analyzers[i][taxa-minTaxa] = new InferenceAnalysis(taxa, maxInference, iterations/threadCount, f.model.getInferences(), random, doneCount, total, time);
 					threads[i][taxa-minTaxa] = new Thread(analyzers[i][taxa-minTaxa]);
 					threads[i][taxa-minTaxa].start();
 				}
@@ -92,7 +93,7 @@ public class AnalysisRunner {
 			Thread[] threads = new Thread[threadCount];
 			AtomicInteger doneCount = new AtomicInteger(0);
 			for (int i = 0; i < threadCount; i++) {
-				analyzers[i] = new DimensionalityAnalysis(taxa, maxInference, iterations/threadCount, f.model.inferences, doneCount, threadCount, time);
+				analyzers[i] = new DimensionalityAnalysis(taxa, maxInference, iterations/threadCount, f.model.getInferences(), doneCount, threadCount, time);
 				threads[i] = new Thread(analyzers[i]);
 				threads[i].start();
 			}
@@ -6,6 +6,7 @@ import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import bep.fylogenetica.Fylogenetica;
@@ -18,6 +19,7 @@ import bep.fylogenetica.algorithm.NotCyclicException;
 import bep.fylogenetica.algorithm.TreeSplitFinder;
 import bep.fylogenetica.model.Inference;
 import bep.fylogenetica.model.Quartet;
+import bep.fylogenetica.model.QuartetIndex;
 import bep.fylogenetica.model.Tree;
 import bep.fylogenetica.model.Witness;
 
@@ -29,14 +31,14 @@ public class DimensionalityAnalysis implements Runnable {
 	int taxa;
 	int maxInference;
 	int iterations;
-	ArrayList<Inference> inferences;
+	List<Inference> inferences;
 	ArrayList<ArrayList<Inference>> usable;
 	public ArrayList<String> outputs;
 	AtomicInteger doneCount;
 	int total;
 	long time;
 
-	public DimensionalityAnalysis(int taxa, int maxInference, int iterations, ArrayList<Inference> inferences, AtomicInteger doneCount, int total, long time) {
+	public DimensionalityAnalysis(int taxa, int maxInference, int iterations, List<Inference> inferences, AtomicInteger doneCount, int total, long time) {
 		this.taxa = taxa;
 		this.maxInference = maxInference;
 		this.iterations = iterations;
@@ -81,9 +83,9 @@ public class DimensionalityAnalysis implements Runnable {
 			for (int i = 0; i < maxInference; i++) {
 				m[i] = new GF2MatrixDense(taxa);
 			}
-			ArrayList<ArrayList<Quartet>> inUse = new ArrayList<>();
+			ArrayList<QuartetIndex> inUse = new ArrayList<>();
 			for (int i = 0; i < maxInference; i++) {
-				inUse.add(new ArrayList<>());
+				inUse.add(new QuartetIndex());
 			}
 			for (int i = 0; i < quartets.size(); i++) {
 				ArrayList<Integer> makeable = new ArrayList<>();
@@ -117,7 +119,6 @@ public class DimensionalityAnalysis implements Runnable {
 								
 								if (l == usable.get(k).size()-1 || witnesses.isEmpty()) {
 									witnesses = m[j].findWitnesses();
-									//Witness.makeGraph(witnesses);
 									if (witnesses.isEmpty()) {
 										break;
 									}
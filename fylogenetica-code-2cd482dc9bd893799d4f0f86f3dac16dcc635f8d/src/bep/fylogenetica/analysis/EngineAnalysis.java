@@ -0,0 +1,138 @@
+package bep.fylogenetica.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import bep.fylogenetica.algorithm.GF2Matrix;
+import bep.fylogenetica.algorithm.GF2MatrixEngine;
+import bep.fylogenetica.algorithm.GF2MatrixFactory;
+import bep.fylogenetica.algorithm.MatrixInconsistentException;
+import bep.fylogenetica.model.Quartet;
+import bep.fylogenetica.model.Tree;
+
+/**
+ * This class contains a method to time the matrix engines (see
+ * {@link GF2MatrixFactory}) against each other, which is what the thresholds in
+ * {@link GF2MatrixFactory#selectEngine(int, int)} are based on.
+ *
+ * <p>For a number of taxon counts and numbers of quartets, every engine builds and
+ * reduces the matrix of the same random quartets of a random tree, and determines
+ * its conforming vector. For every input the median time of every engine is printed,
+ * together with the fastest engine and the engine that the factory selects.</p>
+ */
+public class EngineAnalysis {
+
+	public static final int NUM_REPLICATIONS = 7;
+
+	/**
+	 * The taxon counts to try.
+	 */
+	public static final int[] TAXON_COUNTS = {8, 12, 16, 20, 25, 30};
+
+	/**
+	 * The fractions of sets of four taxa that get a quartet. The number of quartets
+	 * equal to the number of taxa is tried as well.
+	 */
+	public static final double[] FRACTIONS = {0.02, 0.1, 0.25, 0.5, 1.0};
+
+	/**
+	 * Performs the analysis.
+	 *
+	 * @return The lines that were printed.
+	 */
+	public static ArrayList<String> analyze() {
+
+		ArrayList<GF2MatrixEngine> engines = GF2MatrixFactory.getEngines();
+		ArrayList<String> output = new ArrayList<>();
+
+		// first, make sure that JIT does not bias the first few measurements
+		for (int rep = 0; rep < 3; rep++) {
+			for (GF2MatrixEngine engine : engines) {
+				ArrayList<Quartet> quartets = Tree.generateRandomTree(20).getQuartets(20);
+				time(engine, 20, quartets);
+			}
+		}
+
+		StringBuilder header = new StringBuilder("taxa quartets");
+		for (GF2MatrixEngine engine : engines) {
+			header.append(' ').append(engine.getName());
+		}
+		header.append(" fastest selected");
+		output.add(header.toString());
+		System.out.println(header);
+
+		for (int taxa : TAXON_COUNTS) {
+			int quadruples = taxa * (taxa - 1) * (taxa - 2) * (taxa - 3) / 24;
+
+			ArrayList<Integer> counts = new ArrayList<>();
+			counts.add(taxa);
+			for (double fraction : FRACTIONS) {
+				int count = (int) Math.round(fraction * quadruples);
+				if (count > taxa && !counts.contains(count)) {
+					counts.add(count);
+				}
+			}
+
+			for (int count : counts) {
+				double[][] times = new double[engines.size()][NUM_REPLICATIONS];
+
+				for (int rep = 0; rep < NUM_REPLICATIONS; rep++) {
+					ArrayList<Quartet> quartets = Tree.generateRandomTree(taxa).getQuartets(taxa);
+					Collections.shuffle(quartets);
+					quartets = new ArrayList<>(quartets.subList(0, count));
+
+					for (int e = 0; e < engines.size(); e++) {
+						times[e][rep] = time(engines.get(e), taxa, quartets);
+					}
+				}
+
+				StringBuilder line = new StringBuilder(taxa + " " + count);
+				int fastest = 0;
+				double[] medians = new double[engines.size()];
+				for (int e = 0; e < engines.size(); e++) {
+					Arrays.sort(times[e]);
+					medians[e] = times[e][NUM_REPLICATIONS / 2];
+					if (medians[e] < medians[fastest]) {
+						fastest = e;
+					}
+					line.append(String.format(" %.3f", medians[e]));
+				}
+				line.append(' ').append(engines.get(fastest).getName());
+				line.append(' ').append(GF2MatrixFactory.selectEngine(taxa, count).getName());
+
+				output.add(line.toString());
+				System.out.println(line);
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Builds and reduces the matrix for some quartets with an engine, and determines
+	 * its conforming vector.
+	 *
+	 * @param engine The engine.
+	 * @param taxa The number of taxa.
+	 * @param quartets The quartets.
+	 * @return The time this took, in milliseconds.
+	 */
+	private static double time(GF2MatrixEngine engine, int taxa, ArrayList<Quartet> quartets) {
+		long startTime = System.nanoTime();
+
+		GF2Matrix m = engine.createMatrix(taxa);
+		for (Quartet q : quartets) {
+			m.addRowForQuartet(q);
+		}
+		m.rowReduce(false);
+		try {
+			m.determineConformingVector();
+		} catch (MatrixInconsistentException e) {
+			System.out.println("The quartets of a tree gave an inconsistent matrix:");
+			e.printStackTrace();
+		}
+
+		return (System.nanoTime() - startTime) / 1e6;
+	}
+}
@@ -6,18 +6,22 @@ import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import bep.fylogenetica.Fylogenetica;
 import bep.fylogenetica.algorithm.CyclicOrder;
 import bep.fylogenetica.algorithm.DenseVector;
 import bep.fylogenetica.algorithm.GF2Matrix;
-import bep.fylogenetica.algorithm.GF2MatrixDense;
+import bep.fylogenetica.algorithm.GF2MatrixEngine;
+import bep.fylogenetica.algorithm.GF2MatrixFactory;
 import bep.fylogenetica.algorithm.MatrixInconsistentException;
-import bep.fylogenetica.algorithm.NotCyclicException;
 import bep.fylogenetica.algorithm.TreeSplitFinder;
 import bep.fylogenetica.model.Inference;
+import bep.fylogenetica.model.InferenceTrie;
 import bep.fylogenetica.model.Quartet;
+import bep.fylogenetica.model.QuartetIndex;
 import bep.fylogenetica.model.Tree;
 import bep.fylogenetica.model.Witness;
 
@@ -30,14 +34,18 @@ public class InferenceAnalysis implements Runnable {
 	int maxInference;
 	int iterations;
 	int random;
-	ArrayList<Inference> inferences;
-	ArrayList<ArrayList<Inference>> usable;
+	List<Inference> inferences;
+	// for every number of input quartets minus 2, the positions in inferences of the rules with that many input quartets
+	ArrayList<ArrayList<Integer>> usable;
+	InferenceTrie trie;
 	public ArrayList<String> outputs;
 	AtomicInteger doneCount;
 	int total;
 	long time;
+	// the matrix engines that steps() used for the current tree, written to the output
+	TreeSet<String> engines = new TreeSet<>();
 
-	public InferenceAnalysis(int taxa, int maxInference, int iterations, ArrayList<Inference> inferences, int random, AtomicInteger doneCount, int total, long time) {
+	public InferenceAnalysis(int taxa, int maxInference, int iterations, List<Inference> inferences, int random, AtomicInteger doneCount, int total, long time) {
 		this.taxa = taxa;
 		this.maxInference = maxInference;
 		this.iterations = iterations;
@@ -47,13 +55,14 @@ public class InferenceAnalysis implements Runnable {
 		this.total = total;
 		this.time = time;
 		usable = new ArrayList<>();
-		for (Inference inf : inferences) {
-			int index = inf.input.size()-2;
+		for (int rank = 0; rank < inferences.size(); rank++) {
+			int index = inferences.get(rank).input.size()-2;
 			while (index >= usable.size()) {
 				usable.add(new ArrayList<>());
 			}
-			usable.get(index).add(inf);
+			usable.get(index).add(rank);
 		}
+		trie = new InferenceTrie(inferences);
 	}
 
 	@Override
@@ -65,7 +74,7 @@ public class InferenceAnalysis implements Runnable {
 		}
 	}
 
-	public ArrayList<String> analyzeInference() throws MatrixInconsistentException, NotCyclicException {
+	public ArrayList<String> analyzeInference() throws MatrixInconsistentException {
 		ArrayList<String> output = new ArrayList<>();
 		
 		long timeStamp = System.currentTimeMillis();
@@ -73,6 +82,7 @@ public class InferenceAnalysis implements Runnable {
 		long timePerTaxa = timeStamp;
 		for (int count = 0; count < iterations; count++) {
 			ArrayList<Integer> makeable = new ArrayList<>();
+			engines.clear();
 			Tree t = Tree.generateRandomTree(taxa);
 			//System.out.println(t);
 			//System.out.println("Tree made for "+i+" taxa "+(System.currentTimeMillis()-now));
@@ -97,7 +107,7 @@ public class InferenceAnalysis implements Runnable {
 					int[] outCount = new int[maxInference];
 					for (int i = 0; i < random; i++) {
 						//Collections.shuffle(quartets);
-						boolean[] outSteps = steps(taxa, new ArrayList<Quartet>(quartets.subList(0, mid)), usable, maxInference);
+						boolean[] outSteps = steps(taxa, new ArrayList<Quartet>(quartets.subList(0, mid)), trie, maxInference);
 						for (int j = 0; j < maxInference; j++) {
 							if (outSteps[j]) {
 								outCount[j]++;
@@ -136,7 +146,7 @@ public class InferenceAnalysis implements Runnable {
 			//System.out.println("Step "+count+" at taxa size "+taxa+" took "+(newNow-now)+" milliseconds");
 			//System.out.println("Results are as follows "+makeable+" for "+quartets.size()+" quartets");
 			now = newNow;
-			output.add(taxa+" "+makeable+"\n");
+			output.add(taxa+" "+makeable+" "+engines+"\n");
 			if (makeable.get(makeable.size()-1)<0.1*makeable.get(0)) {
 				System.out.println("###########################################");
 				System.out.println("Intresting tree:");
@@ -160,14 +170,16 @@ public class InferenceAnalysis implements Runnable {
 		return output;
 	}
 
-	public boolean[] steps(int taxonCount, ArrayList<Quartet> quartets, ArrayList<ArrayList<Inference>> inferences, int maxInference) throws MatrixInconsistentException, NotCyclicException {
+	public boolean[] steps(int taxonCount, ArrayList<Quartet> quartets, InferenceTrie trie, int maxInference) throws MatrixInconsistentException {
 		boolean[] out = new boolean[maxInference];
 		for (int i = 0; i < maxInference; i++) {
 			out[i] = true;
 		}
 				
 		// step 1
-		GF2MatrixDense m = new GF2MatrixDense(taxonCount);
+		GF2MatrixEngine engine = GF2MatrixFactory.selectEngine(taxonCount, quartets.size());
+		engines.add(engine.getName());
+		GF2Matrix m = engine.createMatrix(taxonCount);
 		
 		for (Quartet q : quartets) {
 			m.addRowForQuartet(q);
@@ -176,7 +188,7 @@ public class InferenceAnalysis implements Runnable {
 		// step 2
 		m.rowReduce(false);
 
-		witnessHandling(m, null, null, quartets, inferences, maxInference, out, taxa);
+		witnessHandling(m, null, null, quartets, trie, maxInference, out, taxa);
 
 		/*
 		// step 3
@@ -187,7 +199,7 @@ public class InferenceAnalysis implements Runnable {
 
 		if (c == null) {
 			c = new CyclicOrder(taxonCount);
-			witnessHandling(m, v, c, quartets, inferences, maxInference, out);
+			witnessHandling(m, v, c, quartets, trie, maxInference, out);
 			boolean isOut = false;
 			for (int i = 0; i < maxInference && !isOut; i++) {
 				isOut &= out[i];
@@ -201,14 +213,14 @@ public class InferenceAnalysis implements Runnable {
 		Tree t = TreeSplitFinder.findSplits(c, v, m);
 
 		if(t == null) {
-			witnessHandling(m, v, c, quartets, inferences, maxInference, out);
+			witnessHandling(m, v, c, quartets, trie, maxInference, out);
 			// step 5
 			t = TreeSplitFinder.findSplits(c, v, m);
 		}*/
 		return out;
 	}
 
-	public void witnessHandling(GF2MatrixDense m, DenseVector v, CyclicOrder c, ArrayList<Quartet> quartets, ArrayList<ArrayList<Inference>> inferences, int maxInference, boolean[] out, int taxa) throws MatrixInconsistentException, NotCyclicException{
+	public void witnessHandling(GF2Matrix m, DenseVector v, CyclicOrder c, ArrayList<Quartet> quartets, InferenceTrie trie, int maxInference, boolean[] out, int taxa) throws MatrixInconsistentException {
 		
 		ArrayList<Witness> witnesses = m.findWitnesses();
 		if (witnesses == null) {
@@ -221,17 +233,55 @@ public class InferenceAnalysis implements Runnable {
 			return;
 		}
 		out[0] = false;
-		//Witness.makeGraph(witnesses);
 		ArrayList<Quartet> added = new ArrayList<>();
+		QuartetIndex index = new QuartetIndex(quartets);
+		// the rules are used one by one, as Inference.use() does; for every witness, the trie
+		// finds the first rule from j on that gives a quartet for it, so that the rules that
+		// give nothing are skipped. first and found stay valid until the quartets or the
+		// witnesses change
+		int[] first = null;
+		Quartet[] found = null;
 		for (int i = 0; i <= maxInference-2; i++) {
-			for (int j = 0; j < inferences.get(i).size(); j++) {
-				Inference inf = inferences.get(i).get(j);
-				ArrayList<Quartet> add = inf.use(quartets, witnesses);
+			first = null;
+			for (int j = 0; j < usable.get(i).size(); j++) {
+				ArrayList<Integer> tier = usable.get(i);
+				if (first == null) {
+					first = new int[witnesses.size()];
+					found = new Quartet[witnesses.size()];
+					Quartet[] q = new Quartet[1];
+					for (int w = 0; w < witnesses.size(); w++) {
+						int rank = trie.findFirstRule(index, witnesses.get(w), i+2, tier.get(j), q);
+						first[w] = rank == -1 ? Integer.MAX_VALUE : Collections.binarySearch(tier, rank);
+						found[w] = q[0];
+					}
+				}
+				int next = Integer.MAX_VALUE;
+				for (int w = 0; w < first.length; w++) {
+					next = Math.min(next, first[w]);
+				}
+				j = Math.min(next, tier.size()-1);
+
+				// the witnesses are handled from the last one on, as in Inference.use()
+				ArrayList<Quartet> add = new ArrayList<>();
+				ArrayList<Witness> remaining = new ArrayList<>();
+				for (int w = witnesses.size()-1; w >= 0; w--) {
+					if (first[w] == j) {
+						add.add(found[w]);
+					}
+				}
+				for (int w = 0; w < witnesses.size(); w++) {
+					if (first[w] != j) {
+						remaining.add(witnesses.get(w));
+					}
+				}
 				if (add.size() > 0) {
+					witnesses = remaining;
+					first = null;
 					added.addAll(add);
 					i = 0;
 					j = 0;
 					quartets.addAll(add);
+					index.addAll(add);
 					for (Quartet q : add) {
 						m.addRowForQuartet(q);
 					}
@@ -239,9 +289,9 @@ public class InferenceAnalysis implements Runnable {
 					//witnesses = m.findWitnesses();
 				}
 				
-				if (j == inferences.get(i).size()-1 || witnesses.isEmpty()) {
+				if (j == usable.get(i).size()-1 || witnesses.isEmpty()) {
 					witnesses = m.findWitnesses();
-					//Witness.makeGraph(witnesses);
+					first = null;
 					if (witnesses.isEmpty()) {
 						break;
 					}
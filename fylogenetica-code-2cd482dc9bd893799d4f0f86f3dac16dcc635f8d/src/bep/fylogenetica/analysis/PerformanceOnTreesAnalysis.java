@@ -36,7 +36,7 @@ public class PerformanceOnTreesAnalysis {
 			ArrayList<Quartet> q = t.getQuartets(20);
 			
 			// create matrix
-			GF2Matrix m = new GF2MatrixDense(20);
+			GF2Matrix m = GF2MatrixFactory.createMatrix(20, q.size());
 			for (int k = 0; k < q.size(); k++) {
 				m.addRowForQuartet(q.get(k));
 			}
@@ -84,8 +84,10 @@ public class PerformanceOnTreesAnalysis {
 				ArrayList<Quartet> q = t.getQuartets(N);
 				
 				// create matrix
+				GF2MatrixEngine engine = GF2MatrixFactory.selectEngine(N, q.size());
+				System.out.println("    " + engine.getName() + " engine");
 				startTime = System.currentTimeMillis();
-				GF2Matrix m = new GF2MatrixDense(N);
+				GF2Matrix m = engine.createMatrix(N);
 				for (int k = 0; k < q.size(); k++) {
 					m.addRowForQuartet(q.get(k));
 				}
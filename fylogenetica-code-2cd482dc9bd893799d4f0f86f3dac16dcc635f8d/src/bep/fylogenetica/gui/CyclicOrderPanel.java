@@ -54,11 +54,11 @@ public class CyclicOrderPanel extends JPanel {
 		g2.draw(new Ellipse2D.Double(0.15 * size, 0.15 * size, 0.7 * size, 0.7 * size));
 		
 		// draw the elements
-		for (int i = 0; i < c.taxa.size(); i++) {
+		for (int i = 0; i < c.size(); i++) {
 		
-			int t = c.taxa.get(i);
+			int t = c.get(i);
 			
-			double rotation = i * 2 * Math.PI / c.taxa.size();
+			double rotation = i * 2 * Math.PI / c.size();
 			
 			// draw the line, and two dots
 			Point2D p1 = new Point2D.Double(0.5 * size + 0.35 * size * Math.cos(rotation), 0.5 * size + 0.35 * size * Math.sin(rotation));
@@ -82,7 +82,7 @@ public class CyclicOrderPanel extends JPanel {
 	
 	@Override
 	public Dimension getPreferredSize() {
-		int size = Math.max(8 * c.taxa.size(), 200);
+		int size = Math.max(8 * c.size(), 200);
 		return new Dimension(size, size);
 	}
 }
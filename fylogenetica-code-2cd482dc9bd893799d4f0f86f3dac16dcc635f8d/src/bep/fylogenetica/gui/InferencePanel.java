@@ -2,6 +2,7 @@ package bep.fylogenetica.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.util.List;
 
 import javax.swing.*;
 
@@ -31,25 +32,28 @@ public class InferencePanel extends JPanel {
 		list = new JList<>(listModel);
 		add(new JScrollPane(list));
 		
-		updateList();
+		setBorder(BorderFactory.createTitledBorder("Inference rules (loading...)"));
+		f.model.inferences.thenRun(() -> SwingUtilities.invokeLater(this::updateList));
 		
 		setPreferredSize(new Dimension(200, 200));
 	}
 	
 	/**
-	 * Updates the inference list.
+	 * Updates the inference list. This waits until the rules are read.
 	 */
 	public void updateList() {
 		
-		if (f.model.inferences.isEmpty()) {
+		List<Inference> inferences = f.model.getInferences();
+		
+		if (inferences.isEmpty()) {
 			setBorder(BorderFactory.createTitledBorder("Inference rules"));
 		} else {
-			setBorder(BorderFactory.createTitledBorder("Inference rules (count: " + f.model.inferences.size() + ")"));
+			setBorder(BorderFactory.createTitledBorder("Inference rules (count: " + inferences.size() + ")"));
 		}
 		
 		listModel.clear();
 		
-		for (Inference inf : f.model.inferences) {
+		for (Inference inf : inferences) {
 			listModel.addElement(inf);
 		}
 	}
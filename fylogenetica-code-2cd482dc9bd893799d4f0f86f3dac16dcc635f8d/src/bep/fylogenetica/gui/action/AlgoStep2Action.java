@@ -13,7 +13,8 @@ import javax.swing.*;
 
 import bep.fylogenetica.Fylogenetica;
 import bep.fylogenetica.algorithm.GF2Matrix;
-import bep.fylogenetica.algorithm.GF2MatrixDense;
+import bep.fylogenetica.algorithm.GF2MatrixEngine;
+import bep.fylogenetica.algorithm.GF2MatrixFactory;
 import bep.fylogenetica.algorithm.ProgressListener;
 import bep.fylogenetica.gui.MainMenuBar;
 import bep.fylogenetica.model.Quartet;
@@ -49,8 +50,9 @@ public class AlgoStep2Action extends AbstractAction {
 			protected GF2Matrix doInBackground() throws Exception {
 				
 				// step 1
-				publish("Creating matrix...");
-				GF2Matrix m = new GF2MatrixDense(f.model.taxonCount);
+				GF2MatrixEngine engine = GF2MatrixFactory.selectEngine(f.model.taxonCount, f.model.quartets.size());
+				publish("Creating matrix (" + engine.getName() + " engine)...");
+				GF2Matrix m = engine.createMatrix(f.model.taxonCount);
 				
 				for (Quartet q : f.model.quartets) {
 					m.addRowForQuartet(q);
@@ -48,8 +48,9 @@ public class AlgoStep3Action extends AbstractAction {
 			protected DenseVector doInBackground() throws Exception {
 				
 				// step 1
-				publish("Creating matrix...");
-				GF2Matrix m = new GF2MatrixDense(f.model.taxonCount);
+				GF2MatrixEngine engine = GF2MatrixFactory.selectEngine(f.model.taxonCount, f.model.quartets.size());
+				publish("Creating matrix (" + engine.getName() + " engine)...");
+				GF2Matrix m = engine.createMatrix(f.model.taxonCount);
 				
 				for (Quartet q : f.model.quartets) {
 					m.addRowForQuartet(q);
@@ -56,8 +56,9 @@ public class ReconstructNetworkAction extends AbstractAction {
 				long startTime = System.currentTimeMillis();
 				
 				// step 1
-				publish(new ProgressUpdate(0, "Creating matrix"));
-				GF2Matrix m = new GF2MatrixDense(f.model.taxonCount);
+				GF2MatrixEngine engine = GF2MatrixFactory.selectEngine(f.model.taxonCount, f.model.quartets.size());
+				publish(new ProgressUpdate(0, "Creating matrix (" + engine.getName() + " engine)"));
+				GF2Matrix m = engine.createMatrix(f.model.taxonCount);
 				
 				for (Quartet q : f.model.quartets) {
 					m.addRowForQuartet(q);
@@ -20,9 +20,11 @@ import bep.fylogenetica.gui.IconHandler;
 import bep.fylogenetica.gui.ProgressUpdate;
 import bep.fylogenetica.model.Network;
 import bep.fylogenetica.model.Quartet;
+import bep.fylogenetica.model.QuartetIndex;
 import bep.fylogenetica.model.Tree;
 import bep.fylogenetica.model.Witness;
-import bep.fylogenetica.model.Inference;
+import bep.fylogenetica.model.WitnessResolver;
+import bep.fylogenetica.model.InferenceTrie;
 
 /**
  * This action executes the entire algorithm:
@@ -36,6 +38,12 @@ import bep.fylogenetica.model.Inference;
  */
 public class ReconstructTreeAction extends AbstractAction {
 	
+	/**
+	 * The maximum time to spend on sampling the space for a cyclic vector, in
+	 * milliseconds.
+	 */
+	private static final long SAMPLING_TIME = 2000;
+	
 	Fylogenetica f;
 	
 	public ReconstructTreeAction(Fylogenetica f) {
@@ -78,8 +86,9 @@ public class ReconstructTreeAction extends AbstractAction {
 				long startTime = System.currentTimeMillis();
 				
 				// step 1
-				publish(new ProgressUpdate(0, "Creating matrix"));
-				GF2Matrix m = new GF2MatrixDense(f.model.taxonCount);
+				GF2MatrixEngine engine = GF2MatrixFactory.selectEngine(f.model.taxonCount, f.model.quartets.size());
+				publish(new ProgressUpdate(0, "Creating matrix (" + engine.getName() + " engine)"));
+				GF2Matrix m = engine.createMatrix(f.model.taxonCount);
 				
 				for (Quartet q : f.model.quartets) {
 					m.addRowForQuartet(q);
@@ -97,6 +106,32 @@ public class ReconstructTreeAction extends AbstractAction {
 				publish(new ProgressUpdate(System.currentTimeMillis() - startTime, "Reconstructing ordering"));
 				CyclicOrder c = v.determineOrder();
 
+				if (c == null) {
+					// the vector wasn't cyclic; try the order that the heuristic picks from
+					// the constraints that are fixed by the matrix
+					OrderConstraints constraints = new OrderConstraints(m, v);
+					if (constraints.hasCycle()) {
+						publish(new ProgressUpdate(System.currentTimeMillis() - startTime, "Fixed constraints contain a cycle"));
+					}
+					c = constraints.determineOrder();
+					
+					if (c != null) {
+						v.changeAll(c.determineVector());
+					}
+				}
+
+				if (c == null) {
+					// try other vectors from the space
+					publish(new ProgressUpdate(System.currentTimeMillis() - startTime, "Sampling the space for a cyclic vector"));
+					CyclicVectorSampler sampler = new CyclicVectorSampler(m, v, 0);
+					DenseVector sample = sampler.findCyclicVector(SAMPLING_TIME);
+					
+					if (sample != null) {
+						v.changeAll(sample);
+						c = v.determineOrder();
+					}
+				}
+
 				if (c == null) {
 					c = new CyclicOrder(f.model.taxonCount);
 					witnessHandling(startTime, m, v, c);
@@ -125,43 +160,29 @@ public class ReconstructTreeAction extends AbstractAction {
 
 			void witnessHandling(long startTime, GF2Matrix m, DenseVector v, CyclicOrder c) throws NotCyclicException, MatrixInconsistentException {
 				publish(new ProgressUpdate(System.currentTimeMillis() - startTime, "Witness found, finding rest"));
-				ArrayList<Inference> usable = new ArrayList<>();
-				for (Inference inf : f.model.inferences) {
-					if (inf.input.size() <= count) {
-						usable.add(inf);
-					}
-				}
+				InferenceTrie trie = f.model.getInferenceTrie();
 				ArrayList<Witness> witnesses = m.findWitnesses();
 				if (witnesses == null) {
 					throw new NotCyclicException();
 				}
-				Witness.makeGraph(witnesses);
 				publish(new ProgressUpdate(System.currentTimeMillis() - startTime, witnesses.size()+" witnesses found. Now using inference"));
 				//System.out.println(witnesses);
 				//System.out.println(c);
 				ArrayList<Quartet> added = new ArrayList<>();
-				long time = System.currentTimeMillis();
-				for (int i = 0; i < usable.size(); i++) {
-					long now = System.currentTimeMillis();
-					//System.out.println(i + " inference " + (now-time));
-					time = now;
-					Inference inf = usable.get(i);
-					ArrayList<Quartet> add = inf.use(f.model.quartets, witnesses);
-					if (add.size() > 0) {
-						added.addAll(add);
-						i = 0;
-						System.out.println(add);
-						f.model.quartets.addAll(add);
-					}
-					
-					if (witnesses.isEmpty()) {
-						witnesses = m.findWitnesses();
-						System.out.println("witnesses were empty??");
-						if (witnesses.isEmpty()) {
-							break;
-						}
-						Witness.makeGraph(witnesses);
+				WitnessResolver resolver = new WitnessResolver(trie, new QuartetIndex(f.model.quartets), count, true, true);
+				while (!witnesses.isEmpty()) {
+					// use all rules at once, until nothing more follows; after the first
+					// round only the witnesses near the new quartets are tried again
+					ArrayList<Quartet> add = resolver.round(witnesses);
+					if (add.isEmpty()) {
+						break;
 					}
+					added.addAll(add);
+					System.out.println(add);
+					f.model.quartets.addAll(add);
+				}
+				if (resolver.getConflictCount() > 0) {
+					publish(new ProgressUpdate(System.currentTimeMillis() - startTime, resolver.getConflictCount()+" conflicting quartets ignored"));
 				}
 
 				// step 1
@@ -205,6 +226,9 @@ public class ReconstructTreeAction extends AbstractAction {
 				
 				setEnabled(true);
 				
+				// try the rules that worked best first next time
+				f.model.reorderInferences();
+				
 				Tree t;
 				
 				try {
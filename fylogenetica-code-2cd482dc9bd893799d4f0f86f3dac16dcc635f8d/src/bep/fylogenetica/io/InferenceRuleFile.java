@@ -0,0 +1,249 @@
+package bep.fylogenetica.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import bep.fylogenetica.model.Inference;
+import bep.fylogenetica.model.Quartet;
+
+/**
+ * This class provides methods to read inference rules, both from the text format
+ * (<code>src/inference/inferenceRules.txt</code>) and from the compiled binary format,
+ * and to write the binary format.
+ *
+ * <p>The text format has a header line, then a line with the number of rules, and then
+ * one rule per line, like <code>[(0 1|2 3), (0 2|1 4)] -> [(0 3|1 4), (0 4|2 3)]</code>.</p>
+ *
+ * <p>The binary format stores the rules exactly as {@link Inference#read()} returns them:
+ * already sorted, with the input quartets sorted and with the overlap values computed.
+ * So reading it doesn't need to do anything but creating the objects. It consists of
+ * (all numbers big-endian):
+ * <ul>
+ * <li>the <code>int</code> {@link #MAGIC}, and the <code>int</code> {@link #VERSION};</li>
+ * <li>an <code>int</code> with the number of rules;</li>
+ * <li>for every rule: a byte with the number of input quartets, a byte with the number
+ * of output quartets and an <code>int</code> with {@link Inference#totalOverlap};
+ * then for every input quartet the packed quartet (see {@link #pack(Quartet)}) and
+ * its {@link Quartet#totalOverlap}, and for every output quartet the packed
+ * quartet.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>To convert the text format, run this class with the text file and the binary file
+ * as arguments. The binary file that is used by the application is
+ * {@link #RESOURCE}.</p>
+ */
+public class InferenceRuleFile {
+
+	/**
+	 * The first four bytes of a binary rule file ("FYIR").
+	 */
+	public static final int MAGIC = 0x46594952;
+
+	/**
+	 * The version of the binary format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The location of the binary rule file on the class path.
+	 */
+	public static final String RESOURCE = "/res/inferenceRules.bin";
+
+	/**
+	 * Converts a text rule file to a binary rule file.
+	 *
+	 * @param args The text file to read and the binary file to write.
+	 * @throws IOException If one of the files could not be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 2) {
+			System.out.println("Usage: java bep.fylogenetica.io.InferenceRuleFile <rules.txt> <rules.bin>");
+			return;
+		}
+
+		List<Inference> rules;
+		try (InputStream in = new FileInputStream(new File(args[0]))) {
+			rules = readText(in);
+		}
+
+		try (OutputStream out = new FileOutputStream(new File(args[1]))) {
+			write(rules, out);
+		}
+
+		System.out.println("Converted " + rules.size() + " rules");
+	}
+
+	/**
+	 * Reads rules in the text format. The rules are sorted as described in
+	 * {@link Inference#ORDER}.
+	 *
+	 * @param in The stream to read from.
+	 * @return The rules.
+	 * @throws IOException If the stream is not a valid rule file.
+	 */
+	public static List<Inference> readText(InputStream in) throws IOException {
+		Scanner s = new Scanner(in);
+
+		s.nextLine(); // header
+		int n = Integer.parseInt(s.nextLine().trim());
+
+		ArrayList<Inference> rules = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			if (!s.hasNextLine()) {
+				throw new IOException("Expected " + n + " rules, but found only " + i);
+			}
+			String line = s.nextLine();
+			int arrow = line.indexOf("->");
+			if (arrow == -1) {
+				throw new IOException("Invalid rule: " + line);
+			}
+			rules.add(new Inference(parseQuartets(line.substring(0, arrow)),
+					parseQuartets(line.substring(arrow + 2))));
+		}
+
+		rules.sort(Inference.ORDER);
+		return rules;
+	}
+
+	/**
+	 * Parses a list of quartets like <code>[(0 1|2 3), (0 2|1 4)]</code>.
+	 *
+	 * @param list The list.
+	 * @return The quartets.
+	 * @throws IOException If the list is not valid.
+	 */
+	private static ArrayList<Quartet> parseQuartets(String list) throws IOException {
+		ArrayList<Quartet> result = new ArrayList<>();
+
+		int start = list.indexOf('(');
+		while (start != -1) {
+			int end = list.indexOf(')', start);
+			if (end == -1) {
+				throw new IOException("Invalid quartet list: " + list);
+			}
+			String[] taxa = list.substring(start + 1, end).replace('|', ' ').trim().split("\\s+");
+			if (taxa.length != 4) {
+				throw new IOException("Invalid quartet list: " + list);
+			}
+			try {
+				result.add(new Quartet(Integer.parseInt(taxa[0]), Integer.parseInt(taxa[1]),
+						Integer.parseInt(taxa[2]), Integer.parseInt(taxa[3])));
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid quartet list: " + list);
+			}
+			start = list.indexOf('(', end);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes rules in the binary format. The rules are written in the order of the
+	 * list, so they should already be sorted.
+	 *
+	 * @param rules The rules to write.
+	 * @param out The stream to write to.
+	 * @throws IOException If the stream could not be written to.
+	 */
+	public static void write(List<Inference> rules, OutputStream out) throws IOException {
+		DataOutputStream d = new DataOutputStream(new BufferedOutputStream(out));
+
+		d.writeInt(MAGIC);
+		d.writeInt(VERSION);
+		d.writeInt(rules.size());
+
+		for (Inference inf : rules) {
+			d.writeByte(inf.input.size());
+			d.writeByte(inf.output.size());
+			d.writeInt(inf.totalOverlap);
+			for (Quartet q : inf.input) {
+				d.writeInt(pack(q));
+				d.writeInt(q.totalOverlap);
+			}
+			for (Quartet q : inf.output) {
+				d.writeInt(pack(q));
+			}
+		}
+
+		d.flush();
+	}
+
+	/**
+	 * Reads rules in the binary format.
+	 *
+	 * @param in The stream to read from.
+	 * @return The rules, in the order in which they were written.
+	 * @throws IOException If the stream is not a valid binary rule file.
+	 */
+	public static List<Inference> read(InputStream in) throws IOException {
+		DataInputStream d = new DataInputStream(new BufferedInputStream(in));
+
+		if (d.readInt() != MAGIC) {
+			throw new IOException("Not a binary inference rule file");
+		}
+		int version = d.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported rule file version " + version);
+		}
+
+		int n = d.readInt();
+		ArrayList<Inference> rules = new ArrayList<>(n);
+
+		for (int i = 0; i < n; i++) {
+			int inputCount = d.readUnsignedByte();
+			int outputCount = d.readUnsignedByte();
+			int totalOverlap = d.readInt();
+
+			ArrayList<Quartet> input = new ArrayList<>(inputCount);
+			for (int j = 0; j < inputCount; j++) {
+				Quartet q = unpack(d.readInt());
+				q.totalOverlap = d.readInt();
+				input.add(q);
+			}
+
+			ArrayList<Quartet> output = new ArrayList<>(outputCount);
+			for (int j = 0; j < outputCount; j++) {
+				output.add(unpack(d.readInt()));
+			}
+
+			rules.add(new Inference(input, output, totalOverlap));
+		}
+
+		return rules;
+	}
+
+	/**
+	 * Packs the taxa of a quartet in an <code>int</code>, one byte per taxon, in the
+	 * order <code>left1</code>, <code>left2</code>, <code>right1</code>,
+	 * <code>right2</code> (from the most significant byte on).
+	 *
+	 * @param q The quartet. Its taxa should be smaller than 256.
+	 * @return The packed quartet.
+	 */
+	private static int pack(Quartet q) {
+		return (q.left1 << 24) | (q.left2 << 16) | (q.right1 << 8) | q.right2;
+	}
+
+	/**
+	 * Unpacks a quartet that was packed by {@link #pack(Quartet)}.
+	 *
+	 * @param packed The packed quartet.
+	 * @return The quartet.
+	 */
+	private static Quartet unpack(int packed) {
+		return new Quartet(packed >>> 24, (packed >>> 16) & 0xff, (packed >>> 8) & 0xff, packed & 0xff);
+	}
+}
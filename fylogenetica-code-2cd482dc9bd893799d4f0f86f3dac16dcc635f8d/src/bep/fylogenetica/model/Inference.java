@@ -1,9 +1,18 @@
 package bep.fylogenetica.model;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+import bep.fylogenetica.io.InferenceRuleFile;
 
 /**
  * A rule for reconstructing trees that can be used to create more quartets.
@@ -15,6 +24,53 @@ public class Inference {
 	public ArrayList<Quartet> output;
 	public int totalOverlap;
 	
+	/**
+	 * The 24 ways to put the taxa of a witness on the output quartet, in the order in
+	 * which they are tried. In ordering <code>o</code>, the labels <code>left1</code>,
+	 * <code>left2</code>, <code>right1</code> and <code>right2</code> of the output
+	 * quartet get the taxa at positions <code>ORDERINGS[o][0]</code>, ...,
+	 * <code>ORDERINGS[o][3]</code> of the witness.
+	 */
+	static final int[][] ORDERINGS = new int[24][];
+	
+	/**
+	 * The 8 permutations of <code>left1</code>, <code>left2</code>, <code>right1</code>,
+	 * <code>right2</code> that don't change a quartet.
+	 */
+	private static final int[][] QUARTET_SYMMETRIES = {
+		{0, 1, 2, 3}, {1, 0, 2, 3}, {0, 1, 3, 2}, {1, 0, 3, 2},
+		{2, 3, 0, 1}, {3, 2, 0, 1}, {2, 3, 1, 0}, {3, 2, 1, 0}};
+	
+	static {
+		int o = 0;
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				for (int k = 0; k < 4; k++) {
+					for (int l = 0; l < 4; l++) {
+						if (i != j && i != k && i != l && j != k && j != l && k != l) {
+							ORDERINGS[o++] = new int[]{i, j, k, l};
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The number of symmetries of the output quartet (see {@link #QUARTET_SYMMETRIES})
+	 * that are symmetries of the whole rule: they can be extended to a permutation
+	 * of all labels that maps the input quartets onto themselves.
+	 */
+	public int symmetryCount;
+	
+	/**
+	 * The orderings (bits of {@link #ORDERINGS}) that have to be tried. If ordering
+	 * <code>o</code> is transformed by a symmetry of the rule, the rule matches just
+	 * as well, and the output quartet is the same. So of every orbit of orderings, only
+	 * the first one is tried.
+	 */
+	int orderings;
+	
 	/**
 	 * Constructs a new Inference rule.
 	 * 
@@ -43,185 +99,449 @@ public class Inference {
 		for (Quartet q : input) {
 			totalOverlap += q.totalOverlap;
 		}
+		computeSymmetries();
 	}
 
-	static public ArrayList<Inference> read() {
-		try {
-			File f = new File("src/inference/inferenceRules.txt");
-			Scanner reader = new Scanner(f);
-			String temp = reader.nextLine();
-			ArrayList<Inference> rules = new ArrayList<>();
-			int n = Integer.parseInt(reader.nextLine());
-			for(int i = 0; i < n; i++) {
-				String s = reader.nextLine();
-				String inputString = s.substring(0, s.indexOf("->"));
-				String outputString = s.substring(s.indexOf("->")+3);
-				int start = inputString.indexOf("[")+1;
-				ArrayList<Quartet> inputQ = new ArrayList<>();
-				while(true) {
-					int next = inputString.indexOf(",", start);
-					if(next == -1) {
-						next = inputString.indexOf("]", start);
-						String t = inputString.substring(start, next);
-						String l = t.substring(t.indexOf("(")+1, t.indexOf("|"));
-						String r = t.substring(t.indexOf("|")+1, t.indexOf(")"));
-						int l1 = Integer.parseInt(l.substring(0, l.indexOf(" ")));
-						int l2 = Integer.parseInt(l.substring(l.indexOf(" ")+1));
-						int r1 = Integer.parseInt(r.substring(0, l.indexOf(" ")));
-						int r2 = Integer.parseInt(r.substring(l.indexOf(" ")+1));
-						Quartet q = new Quartet(l1, l2, r1, r2);
-						inputQ.add(q);
-						break;
+	/**
+	 * Constructs an inference rule of which the input is already sorted and the
+	 * overlap values are already computed, like the rules in a binary rule file (see
+	 * {@link InferenceRuleFile}).
+	 * 
+	 * @param input The list of quartets needed for the rule to hold, sorted.
+	 * @param output The list of quartets that hold.
+	 * @param totalOverlap The sum of the overlap values of the input quartets.
+	 */
+	public Inference(ArrayList<Quartet> input, ArrayList<Quartet> output, int totalOverlap) {
+		this.input = input;
+		this.output = output;
+		this.totalOverlap = totalOverlap;
+		taxaSize = 0;
+		for (Quartet q : input) {
+			taxaSize = Math.max(taxaSize, q.left1+1);
+			taxaSize = Math.max(taxaSize, q.left2+1);
+			taxaSize = Math.max(taxaSize, q.right1+1);
+			taxaSize = Math.max(taxaSize, q.right2+1);
+		}
+		computeSymmetries();
+	}
+
+	/**
+	 * Determines which symmetries of the output quartet are symmetries of the rule,
+	 * and from that which orderings have to be tried (see {@link #orderings}).
+	 */
+	private void computeSymmetries() {
+		Quartet out = output.get(0);
+		int[] outLabels = new int[]{out.left1, out.left2, out.right1, out.right2};
+		
+		ArrayList<int[]> group = new ArrayList<>();
+		for (int[] symmetry : QUARTET_SYMMETRIES) {
+			int[] map = new int[taxaSize];
+			boolean[] used = new boolean[taxaSize];
+			for (int i = 0; i < taxaSize; i++) {
+				map[i] = -1;
+			}
+			for (int x = 0; x < 4; x++) {
+				map[outLabels[x]] = outLabels[symmetry[x]];
+				used[outLabels[symmetry[x]]] = true;
+			}
+			if (extendSymmetry(0, map, used, new boolean[input.size()])) {
+				group.add(symmetry);
+			}
+		}
+		symmetryCount = group.size();
+		
+		orderings = 0;
+		for (int o = 0; o < 24; o++) {
+			boolean first = true;
+			for (int[] symmetry : group) {
+				int[] order = ORDERINGS[o];
+				if (indexOfOrdering(order[symmetry[0]], order[symmetry[1]], order[symmetry[2]], order[symmetry[3]]) < o) {
+					first = false;
+				}
+			}
+			if (first) {
+				orderings |= 1 << o;
+			}
+		}
+	}
+
+	/**
+	 * Tries to extend a partial permutation of the labels, such that input quartet
+	 * <code>i</code> and all after it are mapped onto input quartets that are not used
+	 * yet.
+	 * 
+	 * @param i The input quartet to map next.
+	 * @param map For every label, its image, or <code>-1</code>.
+	 * @param used For every label, whether it is already an image.
+	 * @param target For every input quartet, whether it is already an image.
+	 * @return Whether the permutation could be extended. In any case <code>map</code>,
+	 * <code>used</code> and <code>target</code> are unchanged afterwards.
+	 */
+	private boolean extendSymmetry(int i, int[] map, boolean[] used, boolean[] target) {
+		if (i == input.size()) {
+			return true;
+		}
+		Quartet in = input.get(i);
+		int[] from = new int[]{in.left1, in.left2, in.right1, in.right2};
+		for (int t = 0; t < input.size(); t++) {
+			if (target[t]) {
+				continue;
+			}
+			Quartet q = input.get(t);
+			int[] to = new int[]{q.left1, q.left2, q.right1, q.right2};
+			for (int[] notation : QUARTET_SYMMETRIES) {
+				boolean[] assigned = new boolean[4];
+				boolean fits = true;
+				for (int x = 0; x < 4 && fits; x++) {
+					int image = to[notation[x]];
+					if (map[from[x]] == -1 && !used[image]) {
+						map[from[x]] = image;
+						used[image] = true;
+						assigned[x] = true;
+					} else if (map[from[x]] != image) {
+						fits = false;
 					}
-					String t = inputString.substring(start, next);
-					String l = t.substring(t.indexOf("(")+1, t.indexOf("|"));
-					String r = t.substring(t.indexOf("|")+1, t.indexOf(")"));
-					int l1 = Integer.parseInt(l.substring(0, l.indexOf(" ")));
-					int l2 = Integer.parseInt(l.substring(l.indexOf(" ")+1));
-					int r1 = Integer.parseInt(r.substring(0, l.indexOf(" ")));
-					int r2 = Integer.parseInt(r.substring(l.indexOf(" ")+1));
-					Quartet q = new Quartet(l1, l2, r1, r2);
-					inputQ.add(q);
-					start = next+2;
 				}
-				ArrayList<Quartet> outputQ = new ArrayList<>();
-				start = outputString.indexOf("[")+1;
-				while(true) {
-					int next = outputString.indexOf(",", start);
-					if(next == -1) {
-						next = outputString.indexOf("]", start);
-						String t = outputString.substring(start, next);
-						String l = t.substring(t.indexOf("(")+1, t.indexOf("|"));
-						String r = t.substring(t.indexOf("|")+1, t.indexOf(")"));
-						int l1 = Integer.parseInt(l.substring(0, l.indexOf(" ")));
-						int l2 = Integer.parseInt(l.substring(l.indexOf(" ")+1));
-						int r1 = Integer.parseInt(r.substring(0, l.indexOf(" ")));
-						int r2 = Integer.parseInt(r.substring(l.indexOf(" ")+1));
-						Quartet q = new Quartet(l1, l2, r1, r2);
-						outputQ.add(q);
-						break;
+				target[t] = true;
+				boolean extended = fits && extendSymmetry(i + 1, map, used, target);
+				target[t] = false;
+				for (int x = 0; x < 4; x++) {
+					if (assigned[x]) {
+						used[map[from[x]]] = false;
+						map[from[x]] = -1;
 					}
-					String t = outputString.substring(start, next);
-					String l = t.substring(t.indexOf("(")+1, t.indexOf("|"));
-					String r = t.substring(t.indexOf("|")+1, t.indexOf(")"));
-					int l1 = Integer.parseInt(l.substring(0, l.indexOf(" ")));
-					int l2 = Integer.parseInt(l.substring(l.indexOf(" ")+1));
-					int r1 = Integer.parseInt(r.substring(0, l.indexOf(" ")));
-					int r2 = Integer.parseInt(r.substring(l.indexOf(" ")+1));
-					Quartet q = new Quartet(l1, l2, r1, r2);
-					outputQ.add(q);
-					start = next+2;
 				}
-				Inference inf = new Inference(inputQ, outputQ);
-				rules.add(inf);
+				if (extended) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index in {@link #ORDERINGS} of the given ordering.
+	 */
+	private static int indexOfOrdering(int i, int j, int k, int l) {
+		for (int o = 0; o < 24; o++) {
+			int[] order = ORDERINGS[o];
+			if (order[0] == i && order[1] == j && order[2] == k && order[3] == l) {
+				return o;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The order in which the rules are tried: rules with less input quartets first,
+	 * and of those, the rules with the most overlap first.
+	 */
+	public static final Comparator<Inference> ORDER = (r1, r2) -> r1.input.size() != r2.input.size() ? r1.input.size()-r2.input.size() : r2.totalOverlap-r1.totalOverlap;
+
+	/**
+	 * Reads the inference rules.
+	 * 
+	 * <p>The rules are read from the binary rule file {@link InferenceRuleFile#RESOURCE}
+	 * on the class path. If that isn't there, the text file
+	 * <code>src/inference/inferenceRules.txt</code> is read instead, which is a lot
+	 * slower.</p>
+	 * 
+	 * @return The rules, sorted by {@link #ORDER}, in a list that cannot be
+	 * modified. If the rules cannot be read, the list is empty.
+	 */
+	static public List<Inference> read() {
+		try {
+			InputStream in = Inference.class.getResourceAsStream(InferenceRuleFile.RESOURCE);
+			if (in != null) {
+				try {
+					return Collections.unmodifiableList(InferenceRuleFile.read(in));
+				} finally {
+					in.close();
+				}
 			}
-			rules.sort((r1, r2) -> r1.input.size() != r2.input.size() ? r1.input.size()-r2.input.size() : r2.totalOverlap-r1.totalOverlap);
-			return rules;
-		} catch(FileNotFoundException e) {
+			
+			try (InputStream text = new FileInputStream(new File("src/inference/inferenceRules.txt"))) {
+				return Collections.unmodifiableList(InferenceRuleFile.readText(text));
+			}
+		} catch(IOException e) {
 			e.printStackTrace();
 		}
-		return new ArrayList<>();
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Starts reading the inference rules (see {@link #read()}) on a background
+	 * thread.
+	 * 
+	 * @return A future that completes with the rules.
+	 */
+	static public CompletableFuture<List<Inference>> readInBackground() {
+		return CompletableFuture.supplyAsync(Inference::read);
 	}
 
+	/**
+	 * Uses this rule on the given witnesses. See {@link #use(QuartetIndex, ArrayList)}.
+	 * 
+	 * @param has The known quartets.
+	 * @param witnesses The witnesses.
+	 * @return The quartets that were found.
+	 */
 	public ArrayList<Quartet> use(ArrayList<Quartet> has, ArrayList<Witness> witnesses) {
+		return use(new QuartetIndex(has), witnesses);
+	}
+
+	/**
+	 * Uses this rule on the given witnesses: for every witness, tries to find a
+	 * quartet on its taxa that follows from the known quartets by this rule. The
+	 * witnesses for which a quartet is found are removed from the list.
+	 * 
+	 * @param has The known quartets. When calling this repeatedly, keep the index and
+	 * add the new quartets to it, instead of creating a new one every time.
+	 * @param witnesses The witnesses.
+	 * @return The quartets that were found.
+	 */
+	public ArrayList<Quartet> use(QuartetIndex has, ArrayList<Witness> witnesses) {
+		return use(has, witnesses, false);
+	}
+	
+	/**
+	 * Uses this rule on the given witnesses, see {@link #use(QuartetIndex, ArrayList)}.
+	 * 
+	 * <p>If <code>allOutputs</code> is set, then for every match the other output
+	 * quartets of the rule are made as well, under the same assignment of taxa to
+	 * labels. The ones that are on the taxa of another witness are returned too (if
+	 * they are not known yet and don't conflict with a known quartet), and these
+	 * witnesses are removed without trying the rule on them. So one match can
+	 * resolve several witnesses. The other output quartets are not returned, since
+	 * they only make the known quartets larger and the matching slower.</p>
+	 * 
+	 * @param has The known quartets.
+	 * @param witnesses The witnesses.
+	 * @param allOutputs Whether to return all output quartets of every match.
+	 * @return The quartets that were found.
+	 */
+	public ArrayList<Quartet> use(QuartetIndex has, ArrayList<Witness> witnesses, boolean allOutputs) {
 		ArrayList<Quartet> added = new ArrayList<>();
-		int tried = 0;
-		Witness w = witnesses.get(0);
-		while (tried < witnesses.size()) {
-			for (Witness next : witnesses) {
-				if (!next.tried) {
-					w = next;
-				}
+		QuartetIndex batch = new QuartetIndex();
+		WitnessStore pending = allOutputs ? new WitnessStore(witnesses) : null;
+
+		// the witnesses are tried from the last one to the first one
+		WitnessStore untried = new WitnessStore();
+		for (int i = witnesses.size() - 1; i >= 0; i--) {
+			untried.add(witnesses.get(i));
+		}
+		WitnessStore resolved = new WitnessStore();
+
+		Quartet q = output.get(0);
+		int[] perm = new int[taxaSize];
+		int[] binding = allOutputs ? new int[taxaSize] : null;
+		Predicate<int[]> copy = allOutputs ? p -> {
+			System.arraycopy(p, 0, binding, 0, p.length);
+			return true;
+		} : null;
+		Witness w;
+		while ((w = untried.poll()) != null) {
+			if (batch.containsTaxa(w.taxa)) {
+				// an output of an earlier match
+				resolved.add(w);
+				continue;
 			}
-			boolean removed = false;
-			//for (Quartet q : output) {
-			Quartet q = output.get(0);
-				int[] perm = new int[taxaSize];
-				for (int i = 0; i < taxaSize; i++) {
-					perm[i] = -1;
+			Arrays.fill(perm, -1);
+			for (int o = 0; o < 24; o++) {
+				if ((orderings & (1 << o)) == 0) {
+					// an earlier ordering gives the same result
+					continue;
 				}
-				for (int i = 0; i < 4; i++) {
-					for (int j = 0; j < 4; j++) {
-						for (int k = 0; k < 4; k++) {
-							for (int l = 0; l < 4; l++) {
-								if (i != j && i != k && i != l && j != k && j != l && k != l) {
-									perm[q.left1] = w.taxa[i];
-									perm[q.left2] = w.taxa[j];
-									perm[q.right1] = w.taxa[k];
-									perm[q.right2] = w.taxa[l];
-									if (lookPerm(0, has, perm)) {
-										added.add(new Quartet(w.taxa[i], w.taxa[j], w.taxa[k], w.taxa[l]));
-										//tried -= w.removeConnected(witnesses);
-										witnesses.remove(w);
-										removed = true;
-										break;
-									}
-								}
-							}
-							if (removed) {
-								break;
-							}
-						}
-						if (removed) {
-							break;
-						}
-					}
-					if (removed) {
-						break;
+				int[] order = ORDERINGS[o];
+				perm[q.left1] = w.taxa[order[0]];
+				perm[q.left2] = w.taxa[order[1]];
+				perm[q.right1] = w.taxa[order[2]];
+				perm[q.right2] = w.taxa[order[3]];
+				if (lookPerm(has, perm, new boolean[input.size()], 0, copy)) {
+					Quartet found = new Quartet(w.taxa[order[0]], w.taxa[order[1]], w.taxa[order[2]], w.taxa[order[3]]);
+					added.add(found);
+					batch.add(found);
+					resolved.add(w);
+					if (allOutputs) {
+						addOutputs(has, pending, batch, binding, added);
 					}
+					break;
 				}
-				//if (removed) {
-				//	break;
-				//}
-			//}
-			if (witnesses.contains(w)) {
-				w.tried = true;
-				tried++;
 			}
 		}
-		for (Witness triedW : witnesses) {
-			if (!triedW.tried) {
-				System.out.println("Witness checking went wrong");
-			}
-			triedW.tried = false;
+
+		witnesses.removeIf(resolved::contains);
+		if (allOutputs) {
+			witnesses.removeIf(remaining -> batch.containsTaxa(remaining.taxa));
 		}
 		return added;
 	}
 	
-	private boolean lookPerm(int i, ArrayList<Quartet> has, int[] perm) {
-		if(i == input.size()) {
-			return true;
+	/**
+	 * Looks for an assignment of taxa to the labels of this rule, such that the first
+	 * output quartet gets the given taxa, all input quartets are known, and a condition
+	 * holds. As in {@link #use(QuartetIndex, ArrayList)}, two labels may get the same
+	 * taxon.
+	 * 
+	 * @param has The known quartets.
+	 * @param taxa The taxa of the first output quartet, in the order
+	 * <code>left1</code>, <code>left2</code>, <code>right1</code>,
+	 * <code>right2</code>.
+	 * @param condition Is called with every assignment that is found (for every
+	 * label, its taxon, or <code>-1</code> if the label isn't in an input quartet),
+	 * until it returns <code>true</code>. The array is changed afterwards, so copy it
+	 * to keep it.
+	 * @return Whether an assignment was found for which the condition holds.
+	 */
+	public boolean match(QuartetIndex has, int[] taxa, Predicate<int[]> condition) {
+		Quartet q = output.get(0);
+		int[] perm = new int[taxaSize];
+		Arrays.fill(perm, -1);
+		perm[q.left1] = taxa[0];
+		perm[q.left2] = taxa[1];
+		perm[q.right1] = taxa[2];
+		perm[q.right2] = taxa[3];
+		return lookPerm(has, perm, new boolean[input.size()], 0, condition);
+	}
+	
+	/**
+	 * Adds the output quartets of this rule, except the first one, under the given
+	 * assignment of taxa to labels, if they are on the taxa of a witness.
+	 * 
+	 * @param has The known quartets.
+	 * @param pending The witnesses.
+	 * @param batch The quartets that were found so far. The new quartets are added.
+	 * @param binding The taxa assigned to the labels.
+	 * @param added The list of found quartets. The new quartets are added.
+	 */
+	private void addOutputs(QuartetIndex has, WitnessStore pending, QuartetIndex batch, int[] binding, ArrayList<Quartet> added) {
+		for (int i = 1; i < output.size(); i++) {
+			Quartet out = output.get(i);
+			Quartet q = new Quartet(binding[out.left1], binding[out.left2], binding[out.right1], binding[out.right2]);
+			if (!q.isValid() || !pending.contains(new Witness(new int[]{q.left1, q.left2, q.right1, q.right2}))
+					|| has.contains(q) || has.conflicts(q) || batch.conflicts(q)) {
+				continue;
+			}
+			if (batch.add(q)) {
+				added.add(q);
+			}
 		}
-		Quartet in = input.get(i);
+	}
+	
+	/**
+	 * Tries to extend the partial assignment of taxa to the labels of this rule, such
+	 * that all input quartets are known.
+	 * 
+	 * <p>In every step, the input quartet with the most labels that are already
+	 * assigned is matched. If all four are assigned, this is a single lookup.
+	 * Otherwise, only the known quartets that contain (two of) the assigned taxa are
+	 * tried, in all 8 notations.</p>
+	 * 
+	 * @param has The known quartets.
+	 * @param perm For every label, the taxon assigned to it, or <code>-1</code>.
+	 * @param matched For every input quartet, whether it is already matched.
+	 * @param matchedCount The number of input quartets that are already matched.
+	 * @param found If not <code>null</code>, this is called with every complete
+	 * assignment that is found, and the search goes on as long as it returns
+	 * <code>false</code>.
+	 * @return Whether the assignment could be extended (such that <code>found</code>
+	 * accepts it). In any case <code>perm</code> is unchanged afterwards.
+	 */
+	private boolean lookPerm(QuartetIndex has, int[] perm, boolean[] matched, int matchedCount, Predicate<int[]> found) {
+		if(matchedCount == input.size()) {
+			return found == null || found.test(perm);
+		}
+		
+		int best = -1;
+		int bestBound = -1;
+		for (int i = 0; i < input.size(); i++) {
+			if (!matched[i]) {
+				Quartet in = input.get(i);
+				int bound = (perm[in.left1] != -1 ? 1 : 0) + (perm[in.left2] != -1 ? 1 : 0)
+						+ (perm[in.right1] != -1 ? 1 : 0) + (perm[in.right2] != -1 ? 1 : 0);
+				if (bound > bestBound) {
+					best = i;
+					bestBound = bound;
+				}
+			}
+		}
+		
+		Quartet in = input.get(best);
+		matched[best] = true;
+		boolean result = bestBound == 4
+				? has.contains(perm[in.left1], perm[in.left2], perm[in.right1], perm[in.right2])
+						&& lookPerm(has, perm, matched, matchedCount + 1, found)
+				: lookCandidates(has, perm, matched, matchedCount, in, found);
+		matched[best] = false;
+		return result;
+	}
+	
+	/**
+	 * Tries to match the input quartet <code>in</code>, which has unassigned labels,
+	 * with the known quartets that contain its assigned taxa, and then continues with
+	 * {@link #lookPerm(QuartetIndex, int[], boolean[], int, Predicate)}.
+	 */
+	private boolean lookCandidates(QuartetIndex has, int[] perm, boolean[] matched, int matchedCount, Quartet in, Predicate<int[]> found) {
+		
+		// the assigned taxa of this quartet (at most three)
+		int[] fixed = new int[3];
+		int fixedCount = 0;
+		for (int label : new int[]{in.left1, in.left2, in.right1, in.right2}) {
+			if (perm[label] != -1) {
+				fixed[fixedCount++] = perm[label];
+			}
+		}
+		
+		int[] candidates = null;
+		int candidateCount = has.size();
+		for (int a = 0; a < fixedCount; a++) {
+			if (has.countWith(fixed[a]) < candidateCount) {
+				candidates = has.quartetsWith(fixed[a]);
+				candidateCount = has.countWith(fixed[a]);
+			}
+			for (int b = a + 1; b < fixedCount; b++) {
+				if (fixed[a] != fixed[b] && has.countWith(fixed[a], fixed[b]) < candidateCount) {
+					candidates = has.quartetsWith(fixed[a], fixed[b]);
+					candidateCount = has.countWith(fixed[a], fixed[b]);
+				}
+			}
+		}
+		
 		int[] l1 = new int[]{in.left1, in.left2, in.left1, in.left2, in.right1, in.right1, in.right2, in.right2};
 		int[] l2 = new int[]{in.left2, in.left1, in.left2, in.left1, in.right2, in.right2, in.right1, in.right1};
 		int[] r1 = new int[]{in.right1, in.right1, in.right2, in.right2, in.left1, in.left2, in.left1, in.left2};
 		int[] r2 = new int[]{in.right2, in.right2, in.right1, in.right1, in.left2, in.left1, in.left2, in.left1};
-		for(Quartet q : has) {
+		int[] taxa = has.taxa;
+		for(int c = 0; c < candidateCount; c++) {
+			int q = candidates == null ? c : candidates[c];
+			int qLeft1 = taxa[4*q];
+			int qLeft2 = taxa[4*q+1];
+			int qRight1 = taxa[4*q+2];
+			int qRight2 = taxa[4*q+3];
 			for(int j = 0; j < 8; j++) {
-				if((perm[l1[j]] == -1 || perm[l1[j]] == q.left1) && (perm[l2[j]] == -1 || perm[l2[j]] == q.left2) && 
-				(perm[r1[j]] == -1 || perm[r1[j]] == q.right1) && (perm[r2[j]] == -1 || perm[r2[j]] == q.right2)) {
+				if((perm[l1[j]] == -1 || perm[l1[j]] == qLeft1) && (perm[l2[j]] == -1 || perm[l2[j]] == qLeft2) && 
+				(perm[r1[j]] == -1 || perm[r1[j]] == qRight1) && (perm[r2[j]] == -1 || perm[r2[j]] == qRight2)) {
 					boolean wasl1 = false;
 					boolean wasl2 = false;
 					boolean wasr1 = false;
 					boolean wasr2 = false;
 					if(perm[l1[j]] == -1) {
-						perm[l1[j]] = q.left1;
+						perm[l1[j]] = qLeft1;
 						wasl1 = true;
 					}
 					if(perm[l2[j]] == -1) {
-						perm[l2[j]] = q.left2;
+						perm[l2[j]] = qLeft2;
 						wasl2 = true;
 					}
 					if(perm[r1[j]] == -1) {
-						perm[r1[j]] = q.right1;
+						perm[r1[j]] = qRight1;
 						wasr1 = true;
 					}
 					if(perm[r2[j]] == -1) {
-						perm[r2[j]] = q.right2;
+						perm[r2[j]] = qRight2;
 						wasr2 = true;
 					}
-					boolean look = lookPerm(i+1, has, perm);
+					boolean look = lookPerm(has, perm, matched, matchedCount+1, found);
 					if(wasl1) {
 						perm[l1[j]] = -1;
 					}
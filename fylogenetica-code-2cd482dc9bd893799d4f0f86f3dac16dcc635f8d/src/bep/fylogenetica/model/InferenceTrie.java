@@ -0,0 +1,911 @@
+package bep.fylogenetica.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A set of {@link Inference} rules compiled into a trie, so that rules with the same
+ * first input quartets are matched together.
+ *
+ * <p>Every rule is written in a canonical form. The labels of its (first) output
+ * quartet become <code>0 1 | 2 3</code>. Then the input quartets are put in order: each
+ * time the one with the most labels that are already numbered comes next, and its
+ * new labels get the next numbers. Ties are broken by taking the smallest quartet in
+ * this numbering. In this form, a rule is a sequence of quartet patterns, and rules
+ * that start the same way share a path in the trie. The node at the end of a rule is
+ * marked as terminal.</p>
+ *
+ * <p>Many rules are symmetric: some of the 8 notations of <code>0 1 | 2 3</code> can be
+ * extended to a symmetry of the whole rule. Then several of the 24 ways to put a
+ * witness on <code>0 1 | 2 3</code> are equivalent for that rule, and only the first
+ * one is tried (see {@link Inference#orderings}). Every node keeps which orderings
+ * have to be tried for the rules below it, so parts of the trie are skipped for the
+ * other orderings.</p>
+ *
+ * <p>To find a quartet for a witness, the taxa of the witness are assigned to the
+ * labels <code>0, 1, 2, 3</code> in every possible way, and the trie is searched
+ * depth-first. On every node the pattern is matched against the known quartets
+ * (see {@link QuartetIndex}), and the children are only searched for assignments
+ * that match. When a terminal node is reached, a rule has been matched and the
+ * quartet <code>0 1 | 2 3</code> follows. The rules have a priority, their position
+ * in the list the trie was compiled from, and the quartet of the first rule that
+ * matches is taken, just like when the rules are used one by one: on inputs that
+ * don't come from a tree, rules may give different quartets for the same witness.
+ * So after a match, the search goes on, but only in the subtries that contain a rule
+ * with a higher priority.</p>
+ *
+ * <p>Note that just like in {@link Inference#use(QuartetIndex, ArrayList)}, two labels
+ * may be assigned the same taxon. The trie cannot be modified, so it can be shared
+ * between threads. If it is given a {@link RuleScheduler}, matching the last pattern
+ * of a rule counts as an attempt of that rule, and one in
+ * {@link RuleScheduler#SAMPLE_INTERVAL} attempts is timed and recorded in the
+ * scheduler. The children of a node are tried in the order of the scheduler, so that
+ * a match is usually found early and the rest of the search is cut short; the
+ * priority of the rules stays their position in the list, so the scheduler doesn't
+ * change which quartets are found. To try the rules in another order, build a new
+ * trie.</p>
+ *
+ * <p>The witnesses are matched independently against the known quartets, which are
+ * not changed during a call. So the matching can be done in parallel (see
+ * {@link #useInParallel(QuartetIndex, ArrayList, int)}); afterwards the results are
+ * merged in the order of the witnesses, so the outcome doesn't depend on the
+ * scheduling.</p>
+ */
+public class InferenceTrie {
+
+	/**
+	 * The number of witnesses below which a {@link WitnessTask} doesn't divide itself
+	 * any further.
+	 */
+	private static final int THRESHOLD = 8;
+
+	/**
+	 * A node in the trie: one input quartet pattern, following the patterns on the
+	 * path from the root.
+	 */
+	private static class Node {
+
+		/**
+		 * The labels of the pattern, in the order <code>left1</code>,
+		 * <code>left2</code>, <code>right1</code>, <code>right2</code>.
+		 */
+		int[] pattern;
+
+		/**
+		 * The number of labels that are numbered after this pattern. The labels of
+		 * the pattern that are at least the label count of the parent are new.
+		 */
+		int labelCount;
+
+		/**
+		 * The number of input quartets of the rules that end here, which is the
+		 * depth of this node.
+		 */
+		int depth;
+
+		/**
+		 * The orderings (see {@link Inference#ORDERINGS}) that have to be tried for the
+		 * rules that end in this node, as bits. This is 0 if no rule ends here.
+		 */
+		int terminalOrderings;
+
+		/**
+		 * The orderings that have to be tried for the rules that end in this node or
+		 * below it, as bits.
+		 */
+		int orderings;
+
+		/**
+		 * The rules that end in this node.
+		 */
+		ArrayList<Inference> rules = new ArrayList<>();
+
+		/**
+		 * For every rule that ends in this node, its position in the list of rules that
+		 * the trie was compiled from.
+		 */
+		ArrayList<Integer> ranks = new ArrayList<>();
+
+		/**
+		 * The smallest and largest position (see {@link #ranks}) of the rules that end
+		 * in this node or below it.
+		 */
+		int minRank = Integer.MAX_VALUE, maxRank = -1;
+
+		/**
+		 * The other output quartets (besides <code>0 1 | 2 3</code>) of the rules that
+		 * end in this node, in the canonical labels, in the order <code>left1</code>,
+		 * <code>left2</code>, <code>right1</code>, <code>right2</code>. They are sorted,
+		 * so that they don't depend on the order in which the rules were added.
+		 */
+		ArrayList<int[]> outputs = new ArrayList<>();
+
+		/**
+		 * The children, in the order of the first rule that uses them.
+		 */
+		ArrayList<Node> children = new ArrayList<>();
+
+		/**
+		 * The 8 notations of the pattern, each in the order <code>left1</code>,
+		 * <code>left2</code>, <code>right1</code>, <code>right2</code>.
+		 */
+		int[][] notations;
+
+		Node(int[] pattern, int labelCount, int depth) {
+			this.pattern = pattern;
+			this.labelCount = labelCount;
+			this.depth = depth;
+
+			if (pattern != null) {
+				int l1 = pattern[0], l2 = pattern[1], r1 = pattern[2], r2 = pattern[3];
+				notations = new int[][]{
+					{l1, l2, r1, r2}, {l2, l1, r1, r2}, {l1, l2, r2, r1}, {l2, l1, r2, r1},
+					{r1, r2, l1, l2}, {r1, r2, l2, l1}, {r2, r1, l1, l2}, {r2, r1, l2, l1}};
+			}
+		}
+
+		/**
+		 * Returns the first rule that ends in this node and has to be tried for the
+		 * given ordering.
+		 *
+		 * @param ordering The bit of the ordering.
+		 * @return The rule, or <code>null</code> if there is none.
+		 */
+		Inference getRule(int ordering) {
+			for (Inference rule : rules) {
+				if ((rule.orderings & ordering) != 0) {
+					return rule;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the child with the given pattern, creating it if it doesn't exist.
+		 *
+		 * @param childPattern The pattern.
+		 * @param childLabelCount The number of labels after the pattern.
+		 * @return The child.
+		 */
+		Node getChild(int[] childPattern, int childLabelCount) {
+			for (Node child : children) {
+				if (Arrays.equals(child.pattern, childPattern)) {
+					return child;
+				}
+			}
+			Node child = new Node(childPattern, childLabelCount, depth + 1);
+			children.add(child);
+			return child;
+		}
+	}
+
+	/**
+	 * The root of the trie. It has no pattern and labels <code>0, 1, 2, 3</code>.
+	 */
+	private Node root = new Node(null, 4, 0);
+
+	/**
+	 * The largest number of labels of a rule.
+	 */
+	private int maxLabelCount = 4;
+
+	/**
+	 * The number of rules.
+	 */
+	private int ruleCount;
+
+	/**
+	 * The number of nodes, not including the root.
+	 */
+	private int nodeCount;
+
+	/**
+	 * The smallest number of input quartets of a rule that is not connected, or
+	 * {@link Integer#MAX_VALUE} if all rules are connected. A rule is connected if
+	 * every input quartet is linked to the output quartet by a chain of input quartets
+	 * that share labels.
+	 */
+	private int disconnectedInputSize = Integer.MAX_VALUE;
+
+	/**
+	 * The scheduler that the attempts of the rules are recorded in, or
+	 * <code>null</code>.
+	 */
+	private final RuleScheduler scheduler;
+
+	/**
+	 * Compiles the given rules.
+	 *
+	 * @param rules The rules. Their order is their priority, and the order in which
+	 * the patterns are tried.
+	 */
+	public InferenceTrie(List<Inference> rules) {
+		this(rules, null);
+	}
+
+	/**
+	 * Compiles the given rules, tries the patterns in the order of a scheduler, and
+	 * records a sample of the attempts of the rules in it.
+	 *
+	 * @param rules The rules. Their order is their priority: for every witness, the
+	 * quartet of the first rule that matches is taken.
+	 * @param scheduler The scheduler, made for the same rules, or <code>null</code> to
+	 * try the patterns in the order of the rules and record nothing.
+	 */
+	public InferenceTrie(List<Inference> rules, RuleScheduler scheduler) {
+		this.scheduler = scheduler;
+		IdentityHashMap<Inference, Integer> ranks = new IdentityHashMap<>();
+		for (int i = 0; i < rules.size(); i++) {
+			ranks.put(rules.get(i), i);
+		}
+		for (Inference rule : scheduler == null ? rules : scheduler.order()) {
+			add(rule, ranks.get(rule));
+		}
+	}
+
+	/**
+	 * Returns the number of rules in the trie.
+	 * @return The number of rules.
+	 */
+	public int getRuleCount() {
+		return ruleCount;
+	}
+
+	/**
+	 * Returns whether all rules with at most <code>maxInputSize</code> input quartets
+	 * are connected: every input quartet is linked to the output quartet by a chain of
+	 * input quartets that share labels. In that case, all taxa in a match are at most
+	 * <code>maxInputSize - 1</code> quartets away from the taxa of the witness.
+	 *
+	 * @param maxInputSize The maximum number of input quartets.
+	 * @return Whether the rules are connected.
+	 */
+	public boolean isConnected(int maxInputSize) {
+		return maxInputSize < disconnectedInputSize;
+	}
+
+	/**
+	 * Returns the number of patterns in the trie. Compare this to the total number of
+	 * input quartets of the rules to see how much is shared.
+	 *
+	 * @return The number of nodes.
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Adds a rule to the trie, in its canonical form.
+	 *
+	 * @param rule The rule.
+	 * @param rank The position of the rule in the list of rules.
+	 */
+	private void add(Inference rule, int rank) {
+
+		Quartet out = rule.output.get(0);
+		int[] map = new int[rule.taxaSize];
+		Arrays.fill(map, -1);
+		map[out.left1] = 0;
+		map[out.left2] = 1;
+		map[out.right1] = 2;
+		map[out.right2] = 3;
+		int labelCount = 4;
+
+		ArrayList<Quartet> remaining = new ArrayList<>(rule.input);
+		Node node = root;
+		root.orderings |= rule.orderings;
+		root.minRank = Math.min(root.minRank, rank);
+		root.maxRank = Math.max(root.maxRank, rank);
+
+		while (!remaining.isEmpty()) {
+			Quartet best = null;
+			int[] bestPattern = null;
+			int[] bestLabels = null;
+			int bestBound = -1;
+
+			for (Quartet q : remaining) {
+				int bound = (map[q.left1] != -1 ? 1 : 0) + (map[q.left2] != -1 ? 1 : 0)
+						+ (map[q.right1] != -1 ? 1 : 0) + (map[q.right2] != -1 ? 1 : 0);
+				int[] labels = new int[4];
+				int[] pattern = pattern(q, map, labelCount, labels);
+				if (bound > bestBound || (bound == bestBound && compare(pattern, bestPattern) < 0)) {
+					best = q;
+					bestPattern = pattern;
+					bestLabels = labels;
+					bestBound = bound;
+				}
+			}
+
+			if (bestBound == 0) {
+				disconnectedInputSize = Math.min(disconnectedInputSize, rule.input.size());
+			}
+
+			remaining.remove(best);
+			for (int x = 0; x < 4; x++) {
+				if (map[bestLabels[x]] == -1) {
+					map[bestLabels[x]] = bestPattern[x];
+					labelCount++;
+				}
+			}
+
+			Node parent = node;
+			int childCount = parent.children.size();
+			node = parent.getChild(bestPattern, labelCount);
+			if (parent.children.size() > childCount) {
+				nodeCount++;
+			}
+			node.orderings |= rule.orderings;
+			node.minRank = Math.min(node.minRank, rank);
+			node.maxRank = Math.max(node.maxRank, rank);
+		}
+
+		node.terminalOrderings |= rule.orderings;
+		node.rules.add(rule);
+		node.ranks.add(rank);
+
+		for (int i = 1; i < rule.output.size(); i++) {
+			Quartet q = rule.output.get(i);
+			int[] output = new int[]{map[q.left1], map[q.left2], map[q.right1], map[q.right2]};
+			if (output[0] == -1 || output[1] == -1 || output[2] == -1 || output[3] == -1) {
+				// a label that isn't in the input, so it cannot be assigned
+				continue;
+			}
+			int k = 0;
+			while (k < node.outputs.size() && compare(node.outputs.get(k), output) < 0) {
+				k++;
+			}
+			if (k == node.outputs.size() || !Arrays.equals(node.outputs.get(k), output)) {
+				node.outputs.add(k, output);
+			}
+		}
+		maxLabelCount = Math.max(maxLabelCount, labelCount);
+		ruleCount++;
+	}
+
+	/**
+	 * Determines the canonical pattern of an input quartet, given the labels that are
+	 * already numbered. In both pairs the numbered labels come first, sorted, and the
+	 * pair with the smallest numbered label comes first. Then the new labels are
+	 * numbered from <code>labelCount</code> on, in the order in which they appear.
+	 *
+	 * @param q The input quartet.
+	 * @param map For every label of the rule, its number, or <code>-1</code>.
+	 * @param labelCount The number of labels that are numbered.
+	 * @param labels Is filled with the labels of the rule, in the order of the pattern.
+	 * @return The pattern.
+	 */
+	private static int[] pattern(Quartet q, int[] map, int labelCount, int[] labels) {
+		int[] left = pair(q.left1, q.left2, map);
+		int[] right = pair(q.right1, q.right2, map);
+
+		if (map[right[0]] != -1 && (map[left[0]] == -1 || map[right[0]] < map[left[0]])) {
+			int[] h = left;
+			left = right;
+			right = h;
+		}
+
+		labels[0] = left[0];
+		labels[1] = left[1];
+		labels[2] = right[0];
+		labels[3] = right[1];
+
+		int[] pattern = new int[4];
+		for (int i = 0; i < 4; i++) {
+			pattern[i] = map[labels[i]] != -1 ? map[labels[i]] : labelCount++;
+		}
+		return pattern;
+	}
+
+	/**
+	 * Orders a pair of labels: numbered labels first, sorted by their number, and new
+	 * labels after them.
+	 */
+	private static int[] pair(int a, int b, int[] map) {
+		if (map[a] == -1 || (map[b] != -1 && map[b] < map[a])) {
+			return new int[]{b, a};
+		}
+		return new int[]{a, b};
+	}
+
+	/**
+	 * Compares two patterns lexicographically. A <code>null</code> pattern is larger
+	 * than all others.
+	 */
+	private static int compare(int[] p1, int[] p2) {
+		if (p2 == null) {
+			return -1;
+		}
+		for (int i = 0; i < 4; i++) {
+			if (p1[i] != p2[i]) {
+				return Integer.compare(p1[i], p2[i]);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Uses the rules with at most <code>maxInputSize</code> input quartets on the given
+	 * witnesses: for every witness, tries to find a quartet on its taxa that follows
+	 * from the known quartets by one of these rules. The witnesses for which a quartet
+	 * is found are removed from the list.
+	 *
+	 * <p>The quartets that are found are not added to <code>has</code>, so to use the
+	 * rules until nothing more follows, add them and call this again. Quartets that
+	 * are already known are not returned (but their witnesses are removed), and
+	 * neither are quartets that conflict with a known quartet or with a quartet found
+	 * earlier in the list of witnesses (these witnesses stay in the list). To count
+	 * these conflicts, use a {@link WitnessResolver}.</p>
+	 *
+	 * @param has The known quartets.
+	 * @param witnesses The witnesses.
+	 * @param maxInputSize The maximum number of input quartets of the rules to use.
+	 * @return The quartets that were found.
+	 */
+	public ArrayList<Quartet> use(QuartetIndex has, ArrayList<Witness> witnesses, int maxInputSize) {
+		return use(has, witnesses, null, maxInputSize, false, false, null);
+	}
+
+	/**
+	 * Does the same as {@link #use(QuartetIndex, ArrayList, int)}, but matches the
+	 * witnesses in parallel, on the common fork-join pool. The result is the same.
+	 *
+	 * <p>During the matching <code>has</code> is only read, so it may not be changed
+	 * by another thread during this call.</p>
+	 *
+	 * @param has The known quartets.
+	 * @param witnesses The witnesses.
+	 * @param maxInputSize The maximum number of input quartets of the rules to use.
+	 * @return The quartets that were found.
+	 */
+	public ArrayList<Quartet> useInParallel(QuartetIndex has, ArrayList<Witness> witnesses, int maxInputSize) {
+		return use(has, witnesses, null, maxInputSize, true, false, null);
+	}
+
+	/**
+	 * Does the same as {@link #use(QuartetIndex, ArrayList, int)}, but only uses the
+	 * rules with at least a given number of input quartets, which may be different
+	 * for every witness. This is used by {@link WitnessResolver}.
+	 *
+	 * <p>If <code>allOutputs</code> is set, then for every match the other output
+	 * quartets of the rules that end in the same node are made as well, under the same
+	 * assignment of taxa to labels. The ones that are on the taxa of another witness
+	 * are returned too, and these witnesses are removed (see
+	 * {@link Inference#use(QuartetIndex, ArrayList, boolean)}).</p>
+	 *
+	 * @param has The known quartets.
+	 * @param witnesses The witnesses.
+	 * @param minInputSizes For every witness, the minimum number of input quartets of
+	 * the rules to use, or <code>null</code> to use all rules.
+	 * @param maxInputSize The maximum number of input quartets of the rules to use.
+	 * @param parallel Whether to match the witnesses in parallel.
+	 * @param allOutputs Whether to return all output quartets of every match.
+	 * @param conflicting If not <code>null</code>, the witnesses whose quartet was not
+	 * returned because it conflicts are added to this list.
+	 * @return The quartets that were found.
+	 */
+	ArrayList<Quartet> use(QuartetIndex has, ArrayList<Witness> witnesses, int[] minInputSizes, int maxInputSize, boolean parallel, boolean allOutputs, ArrayList<Witness> conflicting) {
+
+		Quartet[][] found = new Quartet[witnesses.size()][];
+		WitnessTask task = new WitnessTask(has, witnesses, minInputSizes, maxInputSize, allOutputs, found, 0, found.length);
+
+		if (parallel) {
+			ForkJoinPool.commonPool().invoke(task);
+		} else {
+			task.matchAll();
+		}
+
+		return merge(has, witnesses, found, allOutputs, conflicting);
+	}
+
+	/**
+	 * Processes the quartets that were found for the witnesses, in the order of the
+	 * witnesses, as described in {@link #use(QuartetIndex, ArrayList, int)}.
+	 *
+	 * @param has The known quartets.
+	 * @param witnesses The witnesses. The resolved ones are removed.
+	 * @param found For every witness, the quartets that were found (the quartet on
+	 * the witness first), or <code>null</code>.
+	 * @param allOutputs Whether the other output quartets of the matches are used.
+	 * @param conflicting If not <code>null</code>, the witnesses whose quartet was not
+	 * returned because it conflicts are added to this list.
+	 * @return The new quartets.
+	 */
+	private static ArrayList<Quartet> merge(QuartetIndex has, ArrayList<Witness> witnesses, Quartet[][] found, boolean allOutputs, ArrayList<Witness> conflicting) {
+
+		ArrayList<Quartet> added = new ArrayList<>();
+		QuartetIndex round = new QuartetIndex();
+		ArrayList<Witness> remaining = new ArrayList<>();
+		WitnessStore pending = allOutputs ? new WitnessStore(witnesses) : null;
+
+		for (int i = 0; i < found.length; i++) {
+			if (found[i] == null) {
+				remaining.add(witnesses.get(i));
+				continue;
+			}
+			Quartet q = found[i][0];
+			if (has.conflicts(q) || round.conflicts(q)) {
+				if (conflicting != null) {
+					conflicting.add(witnesses.get(i));
+				}
+				remaining.add(witnesses.get(i));
+				continue;
+			}
+			if (!has.contains(q) && round.add(q)) {
+				added.add(q);
+			}
+			for (int k = 1; k < found[i].length; k++) {
+				Quartet other = found[i][k];
+				if (other.isValid() && pending.contains(new Witness(new int[]{other.left1, other.left2, other.right1, other.right2}))
+						&& !has.contains(other) && !has.conflicts(other) && !round.conflicts(other) && round.add(other)) {
+					added.add(other);
+				}
+			}
+		}
+
+		if (allOutputs) {
+			// the witnesses that got a quartet from another match
+			remaining.removeIf(w -> round.containsTaxa(w.taxa));
+		}
+
+		witnesses.clear();
+		witnesses.addAll(remaining);
+
+		return added;
+	}
+
+	/**
+	 * Finds the rule that a witness would be resolved with if the rules were used one
+	 * by one, in the order in which they were given to the trie, as
+	 * {@link Inference#use(QuartetIndex, ArrayList)} does: the first rule that gives a
+	 * quartet for the witness, with the quartet of the first ordering (see
+	 * {@link Inference#ORDERINGS}) for which that rule matches. This is the quartet that
+	 * {@link #use(QuartetIndex, ArrayList, int)} gives as well, but only the rules with
+	 * the given number of input quartets and from a given position on are used.
+	 *
+	 * @param has The known quartets.
+	 * @param w The witness.
+	 * @param inputSize The number of input quartets of the rules to use.
+	 * @param from The position, in the list of rules, of the first rule to use. The
+	 * rules before it are skipped.
+	 * @param found Is filled with the quartet that the rule gives, at index 0.
+	 * @return The position of the rule in the list of rules, or <code>-1</code> if none
+	 * of the rules gives a quartet.
+	 */
+	public int findFirstRule(QuartetIndex has, Witness w, int inputSize, int from, Quartet[] found) {
+
+		Search s = find(has, w, inputSize, inputSize, from, null);
+		if (s.terminal == null) {
+			return -1;
+		}
+
+		found[0] = s.getQuartets(w, false)[0];
+		return s.best;
+	}
+
+	/**
+	 * A task that tries to find quartets for a range of witnesses, dividing the range
+	 * if it is too large.
+	 */
+	private class WitnessTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final QuartetIndex has;
+		private final ArrayList<Witness> witnesses;
+		private final int[] minInputSizes;
+		private final int maxInputSize;
+		private final boolean allOutputs;
+		private final Quartet[][] found;
+		private final int from;
+		private final int to;
+
+		WitnessTask(QuartetIndex has, ArrayList<Witness> witnesses, int[] minInputSizes, int maxInputSize, boolean allOutputs, Quartet[][] found, int from, int to) {
+			this.has = has;
+			this.witnesses = witnesses;
+			this.minInputSizes = minInputSizes;
+			this.maxInputSize = maxInputSize;
+			this.allOutputs = allOutputs;
+			this.found = found;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (to - from <= THRESHOLD) {
+				matchAll();
+				return;
+			}
+
+			int middle = (from + to) / 2;
+			invokeAll(new WitnessTask(has, witnesses, minInputSizes, maxInputSize, allOutputs, found, from, middle),
+					new WitnessTask(has, witnesses, minInputSizes, maxInputSize, allOutputs, found, middle, to));
+		}
+
+		/**
+		 * Matches all witnesses of this task on the current thread.
+		 */
+		void matchAll() {
+			// start the countdown at a random point, since a task may not get to the end
+			int[] sample = scheduler == null ? null : new int[]{1 + ThreadLocalRandom.current().nextInt(RuleScheduler.SAMPLE_INTERVAL)};
+			for (int i = from; i < to; i++) {
+				int minInputSize = minInputSizes == null ? 0 : minInputSizes[i];
+				Search s = find(has, witnesses.get(i), minInputSize, maxInputSize, 0, sample);
+				found[i] = s.terminal == null ? null : s.getQuartets(witnesses.get(i), allOutputs);
+			}
+		}
+	}
+
+	/**
+	 * The state of the search for the first rule that matches a witness.
+	 */
+	private class Search {
+
+		/**
+		 * The known quartets.
+		 */
+		final QuartetIndex has;
+
+		/**
+		 * The minimum and maximum depth of a terminal node to use.
+		 */
+		final int minInputSize, maxInputSize;
+
+		/**
+		 * The position of the first rule to use.
+		 */
+		final int from;
+
+		/**
+		 * The number of attempts of a rule until the next one is recorded in the
+		 * scheduler, in the first element, or <code>null</code> if nothing is recorded.
+		 * Every task has its own countdown.
+		 */
+		final int[] sample;
+
+		/**
+		 * The taxa assigned to the labels.
+		 */
+		final int[] perm = new int[maxLabelCount];
+
+		/**
+		 * The index of the ordering that is tried, and its bit.
+		 */
+		int order, ordering;
+
+		/**
+		 * The position of the first rule that matches so far, or
+		 * {@link Integer#MAX_VALUE}. Only rules before it are looked for.
+		 */
+		int best = Integer.MAX_VALUE;
+
+		/**
+		 * The index of the ordering for which that rule matches.
+		 */
+		int bestOrder;
+
+		/**
+		 * The terminal node of that rule, or <code>null</code> if no rule matches.
+		 */
+		Node terminal;
+
+		/**
+		 * The taxa assigned to the labels of that rule in its first match.
+		 */
+		int[] assignment;
+
+		Search(QuartetIndex has, int minInputSize, int maxInputSize, int from, int[] sample) {
+			this.has = has;
+			this.minInputSize = minInputSize;
+			this.maxInputSize = maxInputSize;
+			this.from = from;
+			this.sample = sample;
+		}
+
+		/**
+		 * Returns the quartets of the rule that was found.
+		 *
+		 * @param w The witness.
+		 * @param allOutputs Whether to return the other output quartets too.
+		 * @return The quartet on the witness, followed by the other output quartets if
+		 * <code>allOutputs</code> is set.
+		 */
+		Quartet[] getQuartets(Witness w, boolean allOutputs) {
+			int[] o = Inference.ORDERINGS[bestOrder];
+			Quartet[] result = new Quartet[allOutputs ? 1 + terminal.outputs.size() : 1];
+			result[0] = new Quartet(w.taxa[o[0]], w.taxa[o[1]], w.taxa[o[2]], w.taxa[o[3]]);
+			for (int k = 1; k < result.length; k++) {
+				int[] out = terminal.outputs.get(k - 1);
+				result[k] = new Quartet(assignment[out[0]], assignment[out[1]], assignment[out[2]], assignment[out[3]]);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Finds the first rule, in the order in which the rules were given to the trie,
+	 * that gives a quartet on the taxa of a witness, with the first ordering for which
+	 * it matches.
+	 *
+	 * @param has The known quartets.
+	 * @param w The witness.
+	 * @param minInputSize The minimum number of input quartets of the rules to use.
+	 * @param maxInputSize The maximum number of input quartets of the rules to use.
+	 * @param from The position of the first rule to use.
+	 * @param sample The countdown to the next recorded attempt, see
+	 * {@link Search#sample}.
+	 * @return The result of the search.
+	 */
+	private Search find(QuartetIndex has, Witness w, int minInputSize, int maxInputSize, int from, int[] sample) {
+
+		Search s = new Search(has, minInputSize, maxInputSize, from, sample);
+
+		for (int o = 0; o < 24; o++) {
+			int ordering = 1 << o;
+			if ((root.orderings & ordering) == 0) {
+				continue;
+			}
+			int[] order = Inference.ORDERINGS[o];
+			s.perm[0] = w.taxa[order[0]];
+			s.perm[1] = w.taxa[order[1]];
+			s.perm[2] = w.taxa[order[2]];
+			s.perm[3] = w.taxa[order[3]];
+			s.order = o;
+			s.ordering = ordering;
+			// only a rule before the best one so far can change the result, so an
+			// earlier ordering wins a tie
+			search(s, root);
+		}
+
+		return s;
+	}
+
+	/**
+	 * Searches the subtrie below a node whose patterns all match, for a rule before
+	 * the best one so far. The subtries that only contain rules outside
+	 * <code>[s.from, s.best)</code> are skipped.
+	 *
+	 * @param s The search.
+	 * @param node The node. The taxa assigned to its labels are in <code>s.perm</code>.
+	 */
+	private void search(Search s, Node node) {
+
+		if (node.minRank >= s.best || node.maxRank < s.from) {
+			return;
+		}
+
+		if ((node.terminalOrderings & s.ordering) != 0 && node.depth >= s.minInputSize) {
+			for (int k = 0; k < node.rules.size(); k++) {
+				int rank = node.ranks.get(k);
+				if (rank >= s.from && rank < s.best && (node.rules.get(k).orderings & s.ordering) != 0) {
+					s.best = rank;
+					s.bestOrder = s.order;
+					s.terminal = node;
+					s.assignment = Arrays.copyOf(s.perm, node.labelCount);
+				}
+			}
+		}
+		if (node.depth == s.maxInputSize) {
+			return;
+		}
+
+		for (Node child : node.children) {
+			if ((child.orderings & s.ordering) == 0) {
+				continue;
+			}
+
+			// if a rule ends in the child, matching the child is an attempt of that rule
+			Inference rule = s.sample != null && child.depth >= s.minInputSize ? child.getRule(s.ordering) : null;
+			if (rule == null || --s.sample[0] > 0) {
+				match(s, node.labelCount, child);
+				continue;
+			}
+
+			s.sample[0] = RuleScheduler.SAMPLE_INTERVAL;
+			int best = s.best;
+			long start = System.nanoTime();
+			match(s, node.labelCount, child);
+			scheduler.record(rule, System.nanoTime() - start, s.best < best);
+		}
+	}
+
+	/**
+	 * Matches the pattern of a node against the known quartets, and searches the
+	 * subtrie below it for every match, as long as it can contain a rule before the
+	 * best one so far.
+	 *
+	 * @param s The search.
+	 * @param bound The number of labels that are assigned.
+	 * @param node The node.
+	 */
+	private void match(Search s, int bound, Node node) {
+
+		if (node.minRank >= s.best || node.maxRank < s.from) {
+			return;
+		}
+
+		QuartetIndex has = s.has;
+		int[] perm = s.perm;
+		int[] p = node.pattern;
+
+		if (node.labelCount == bound) {
+			if (has.contains(perm[p[0]], perm[p[1]], perm[p[2]], perm[p[3]])) {
+				search(s, node);
+			}
+			return;
+		}
+
+		int[][] selected = new int[1][];
+		int candidateCount = candidates(has, bound, p, perm, selected);
+		int[] candidates = selected[0];
+		int[] taxa = has.taxa;
+
+		for (int c = 0; c < candidateCount && node.minRank < s.best; c++) {
+			int q = 4 * (candidates == null ? c : candidates[c]);
+			for (int[] labels : node.notations) {
+				boolean fits = true;
+				for (int x = 0; x < 4 && fits; x++) {
+					if (labels[x] < bound && perm[labels[x]] != taxa[q + x]) {
+						fits = false;
+					}
+				}
+				if (!fits) {
+					continue;
+				}
+				// the new labels don't have to be reset afterwards, since they are
+				// only read after they are assigned again
+				for (int x = 0; x < 4; x++) {
+					if (labels[x] >= bound) {
+						perm[labels[x]] = taxa[q + x];
+					}
+				}
+				search(s, node);
+			}
+		}
+	}
+
+	/**
+	 * Selects the known quartets that can match a pattern: the quartets through the
+	 * assigned taxa of the pattern (the numbered labels come first in both pairs, see
+	 * {@link #pattern(Quartet, int[], int, int[])}), taking the smallest such set.
+	 *
+	 * @param has The known quartets.
+	 * @param bound The number of labels that are assigned.
+	 * @param p The pattern.
+	 * @param perm The taxa assigned to the first <code>bound</code> labels.
+	 * @param selected Is filled with the indices of the candidates in <code>has</code>
+	 * at index 0, or with <code>null</code> if all known quartets are candidates.
+	 * @return The number of candidates.
+	 */
+	private static int candidates(QuartetIndex has, int bound, int[] p, int[] perm, int[][] selected) {
+
+		int[] candidates = null;
+		int candidateCount = has.size();
+		int[] fixed = new int[]{p[0] < bound ? perm[p[0]] : -1, p[1] < bound ? perm[p[1]] : -1,
+				p[2] < bound ? perm[p[2]] : -1, p[3] < bound ? perm[p[3]] : -1};
+		for (int a = 0; a < 4; a++) {
+			if (fixed[a] == -1) {
+				continue;
+			}
+			if (has.countWith(fixed[a]) < candidateCount) {
+				candidates = has.quartetsWith(fixed[a]);
+				candidateCount = has.countWith(fixed[a]);
+			}
+			for (int b = a + 1; b < 4; b++) {
+				if (fixed[b] != -1 && fixed[a] != fixed[b] && has.countWith(fixed[a], fixed[b]) < candidateCount) {
+					candidates = has.quartetsWith(fixed[a], fixed[b]);
+					candidateCount = has.countWith(fixed[a], fixed[b]);
+				}
+			}
+		}
+
+		selected[0] = candidates;
+		return candidateCount;
+	}
+}
@@ -1,6 +1,7 @@
 package bep.fylogenetica.model;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 
 import bep.fylogenetica.model.Network.Vertex;
 import bep.fylogenetica.model.Network.VertexType;
@@ -73,6 +74,12 @@ public class Level1Network {
 	 */
 	public ArrayList<Level1Network> connectedNetworks;
 	
+	/**
+	 * The taxa in this network. This is maintained by the constructors and by
+	 * {@link #replace(Level1Network, Level1Network)} and {@link #remove(Level1Network)}.
+	 */
+	private BitSet taxa;
+	
 	/**
 	 * Creates a new singleton network.
 	 * @param taxon The taxon this singleton network should consist of.
@@ -80,6 +87,9 @@ public class Level1Network {
 	public Level1Network(int taxon) {
 		type = Level1NetworkType.SINGLETON;
 		this.taxon = taxon;
+		
+		taxa = new BitSet();
+		taxa.set(taxon);
 	}
 	
 	/**
@@ -92,6 +102,9 @@ public class Level1Network {
 		type = Level1NetworkType.EDGE;
 		this.subNetwork1 = subNetwork1;
 		this.subNetwork2 = subNetwork2;
+		
+		taxa = (BitSet) subNetwork1.taxa.clone();
+		taxa.or(subNetwork2.taxa);
 	}
 	
 	/**
@@ -113,6 +126,8 @@ public class Level1Network {
 		for (Level1Network n : networks) {
 			connectedNetworks.add(n);
 		}
+		
+		updateTaxa();
 	}
 	
 	/**
@@ -129,6 +144,7 @@ public class Level1Network {
 		}
 		
 		connectedNetworks.set(connectedNetworks.indexOf(original), replacement);
+		updateTaxa();
 	}
 	
 	/**
@@ -144,6 +160,33 @@ public class Level1Network {
 		}
 		
 		connectedNetworks.remove(connectedNetworks.indexOf(toRemove));
+		updateTaxa();
+	}
+	
+	/**
+	 * Recomputes the taxa of a circle or blob from its connected networks.
+	 * 
+	 * <p>Note that the networks containing this network are not updated. In practice
+	 * this is no problem, as a replacement normally contains the same taxa as the
+	 * networks it replaces.</p>
+	 */
+	private void updateTaxa() {
+		taxa = new BitSet();
+		
+		for (Level1Network n : connectedNetworks) {
+			taxa.or(n.taxa);
+		}
+	}
+	
+	/**
+	 * Returns the taxa in this network.
+	 * 
+	 * <p>The returned set should not be modified.</p>
+	 * 
+	 * @return A set containing the IDs of the taxa.
+	 */
+	public BitSet getTaxa() {
+		return taxa;
 	}
 
 	/**
@@ -1,6 +1,8 @@
 package bep.fylogenetica.model;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.SwingUtilities;
 
@@ -22,9 +24,21 @@ public class MainModel {
 	public ArrayList<Quartet> quartets;
 
 	/**
-	 * The set of inference rules.
+	 * The set of inference rules. These are read in the background, so use
+	 * {@link #getInferences()} to wait for them.
 	 */
-	public ArrayList<Inference> inferences;
+	public CompletableFuture<List<Inference>> inferences;
+
+	/**
+	 * The scheduler that keeps the statistics of the rules in the trie.
+	 */
+	public CompletableFuture<RuleScheduler> scheduler;
+
+	/**
+	 * The inference rules compiled into a trie, that tries them in the order of the
+	 * {@link RuleScheduler}. This is done as soon as the rules are read.
+	 */
+	public volatile CompletableFuture<InferenceTrie> inferenceTrie;
 	
 	/**
 	 * The network shown in the application.
@@ -40,10 +54,43 @@ public class MainModel {
 	public MainModel(Fylogenetica f) {
 		this.f = f;
 		quartets = new ArrayList<>();
-		inferences = Inference.read();
+		inferences = Inference.readInBackground();
+		scheduler = inferences.thenApply(RuleScheduler::new);
+		inferenceTrie = inferences.thenCombine(scheduler, InferenceTrie::new);
 		setNetwork(null);
 	}
 
+	/**
+	 * Returns the inference rules, waiting until they are read if necessary.
+	 * @return The rules. This list cannot be modified, so it can be shared between
+	 * threads.
+	 */
+	public List<Inference> getInferences() {
+		return inferences.join();
+	}
+
+	/**
+	 * Returns the compiled inference rules, waiting until they are ready if necessary.
+	 * @return The trie.
+	 */
+	public InferenceTrie getInferenceTrie() {
+		return inferenceTrie.join();
+	}
+
+	/**
+	 * Compiles the trie again, with the rules in the order of the statistics so far
+	 * (see {@link RuleScheduler}), and saves the statistics if a file is set for them.
+	 * This is done in the background. The order of the rules only changes how fast
+	 * quartets are found, also with all outputs: the trie still takes the quartets of
+	 * the first rule in the order of {@link #getInferences()} that matches.
+	 */
+	public void reorderInferences() {
+		inferenceTrie = inferences.thenCombineAsync(scheduler, (rules, s) -> {
+			s.save();
+			return new InferenceTrie(rules, s);
+		});
+	}
+
 	public Network getNetwork() {
 		return network;
 	}
@@ -0,0 +1,477 @@
+package bep.fylogenetica.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A set of quartets that can be searched quickly. This is used to match the input of
+ * {@link Inference} rules against the known quartets.
+ *
+ * <p>For every set of four taxa, the index stores which topologies are known for it,
+ * so checking whether a quartet is known takes constant time. Moreover, for every
+ * taxon and for every pair of taxa, the index keeps a list of the quartets that
+ * contain them, so that a rule can be matched by only looking at the quartets that
+ * touch the taxa that are already fixed.</p>
+ *
+ * <h3>Implementation details</h3>
+ * <p>The quartets are numbered in the order in which they are added, and are stored
+ * as four taxa each in {@link #taxa}. A set of four taxa <code>a &lt; b &lt; c &lt;
+ * d</code> is packed in a <code>long</code> of 16 bits per taxon, and its topologies
+ * in a bit mask: bit 0, 1 or 2 means that <code>a</code> is paired with
+ * <code>b</code>, <code>c</code> or <code>d</code> respectively. These are kept in an
+ * open-addressing hash table, as are the lists for the pairs of taxa. Taxa have to be
+ * smaller than 65536.</p>
+ *
+ * <p>Quartets that contain a taxon twice are ignored, as are quartets that are
+ * already known.</p>
+ */
+public class QuartetIndex {
+
+	/**
+	 * The taxa of the quartets, four per quartet, in the order <code>left1</code>,
+	 * <code>left2</code>, <code>right1</code>, <code>right2</code>.
+	 */
+	int[] taxa = new int[64];
+
+	/**
+	 * The number of quartets.
+	 */
+	private int size;
+
+	/**
+	 * The hash table of sets of four taxa: the packed sets, or 0 for an empty slot.
+	 */
+	private long[] setKeys = new long[64];
+
+	/**
+	 * For every slot in {@link #setKeys}, the topology mask of the set.
+	 */
+	private byte[] setTopologies = new byte[64];
+
+	/**
+	 * The number of sets in {@link #setKeys}.
+	 */
+	private int setCount;
+
+	/**
+	 * For every taxon, the quartets that contain it.
+	 */
+	private int[][] byTaxon = new int[0][];
+
+	/**
+	 * For every taxon, the length of its list in {@link #byTaxon}.
+	 */
+	private int[] byTaxonSize = new int[0];
+
+	/**
+	 * The hash table of pairs of taxa: the packed pairs, or 0 for an empty slot.
+	 */
+	private long[] pairKeys = new long[64];
+
+	/**
+	 * For every slot in {@link #pairKeys}, the quartets that contain the pair.
+	 */
+	private int[][] byPair = new int[64][];
+
+	/**
+	 * For every slot in {@link #pairKeys}, the length of its list in {@link #byPair}.
+	 */
+	private int[] byPairSize = new int[64];
+
+	/**
+	 * The number of pairs in {@link #pairKeys}.
+	 */
+	private int pairCount;
+
+	/**
+	 * Creates an empty index.
+	 */
+	public QuartetIndex() {
+	}
+
+	/**
+	 * Creates an index that contains the given quartets.
+	 *
+	 * @param quartets The quartets to add.
+	 */
+	public QuartetIndex(Collection<Quartet> quartets) {
+		addAll(quartets);
+	}
+
+	/**
+	 * Returns the number of quartets in the index.
+	 * @return The number of quartets.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds all given quartets.
+	 *
+	 * @param quartets The quartets to add.
+	 */
+	public void addAll(Collection<Quartet> quartets) {
+		for (Quartet q : quartets) {
+			add(q);
+		}
+	}
+
+	/**
+	 * Adds a quartet.
+	 *
+	 * @param q The quartet to add.
+	 * @return <code>true</code> if the quartet was added, <code>false</code> if it was
+	 * already known or if it contains a taxon twice.
+	 */
+	public boolean add(Quartet q) {
+
+		if (!q.isValid()) {
+			return false;
+		}
+
+		long key = setKey(q.left1, q.left2, q.right1, q.right2);
+		int topology = topology(q.left1, q.left2, q.right1, q.right2);
+
+		int slot = findSet(key);
+		if (setKeys[slot] == 0) {
+			setKeys[slot] = key;
+			setCount++;
+		} else if ((setTopologies[slot] & topology) != 0) {
+			return false;
+		}
+		setTopologies[slot] |= topology;
+
+		if (4 * size == taxa.length) {
+			taxa = Arrays.copyOf(taxa, 2 * taxa.length);
+		}
+		int id = size++;
+		taxa[4 * id] = q.left1;
+		taxa[4 * id + 1] = q.left2;
+		taxa[4 * id + 2] = q.right1;
+		taxa[4 * id + 3] = q.right2;
+
+		for (int i = 0; i < 4; i++) {
+			addToTaxon(taxa[4 * id + i], id);
+			for (int j = i + 1; j < 4; j++) {
+				addToPair(taxa[4 * id + i], taxa[4 * id + j], id);
+			}
+		}
+
+		if (2 * setCount > setKeys.length) {
+			growSets();
+		}
+		if (2 * pairCount > pairKeys.length) {
+			growPairs();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns whether the quartet <code>left1 left2 | right1 right2</code> is in the
+	 * index, in any of its notations.
+	 *
+	 * @param left1 First taxon on the left.
+	 * @param left2 Second taxon on the left.
+	 * @param right1 First taxon on the right.
+	 * @param right2 Second taxon on the right.
+	 * @return Whether the quartet is known.
+	 */
+	public boolean contains(int left1, int left2, int right1, int right2) {
+
+		if (left1 == left2 || left1 == right1 || left1 == right2
+				|| left2 == right1 || left2 == right2 || right1 == right2) {
+			return false;
+		}
+
+		int slot = findSet(setKey(left1, left2, right1, right2));
+		return (setTopologies[slot] & topology(left1, left2, right1, right2)) != 0;
+	}
+
+	/**
+	 * Returns whether the given quartet is in the index, in any of its notations.
+	 *
+	 * @param q The quartet.
+	 * @return Whether the quartet is known.
+	 */
+	public boolean contains(Quartet q) {
+		return contains(q.left1, q.left2, q.right1, q.right2);
+	}
+
+	/**
+	 * Returns whether the index contains a quartet on the given four taxa, with any
+	 * topology.
+	 *
+	 * @param taxa The four taxa, in any order.
+	 * @return Whether a quartet on these taxa is known.
+	 */
+	public boolean containsTaxa(int[] taxa) {
+
+		int a = taxa[0], b = taxa[1], c = taxa[2], d = taxa[3];
+		if (a == b || a == c || a == d || b == c || b == d || c == d) {
+			return false;
+		}
+
+		int slot = findSet(setKey(a, b, c, d));
+		return setTopologies[slot] != 0;
+	}
+
+	/**
+	 * Returns whether the index contains a quartet on the same four taxa as the
+	 * given quartet, but with another topology.
+	 *
+	 * @param q The quartet.
+	 * @return Whether a conflicting quartet is known.
+	 */
+	public boolean conflicts(Quartet q) {
+
+		if (!q.isValid()) {
+			return false;
+		}
+
+		int slot = findSet(setKey(q.left1, q.left2, q.right1, q.right2));
+		return (setTopologies[slot] & ~topology(q.left1, q.left2, q.right1, q.right2)) != 0;
+	}
+
+	/**
+	 * Returns the quartet with the given number.
+	 *
+	 * @param id The number of the quartet, between 0 and {@link #size()}.
+	 * @return A new {@link Quartet} object.
+	 */
+	public Quartet get(int id) {
+		return new Quartet(taxa[4 * id], taxa[4 * id + 1], taxa[4 * id + 2], taxa[4 * id + 3]);
+	}
+
+	/**
+	 * Returns the list of quartets that contain the given taxon. Only the first
+	 * {@link #countWith(int)} elements are valid, and the array may not be
+	 * modified.
+	 *
+	 * @param taxon The taxon.
+	 * @return The numbers of the quartets.
+	 */
+	int[] quartetsWith(int taxon) {
+		return taxon < byTaxon.length && byTaxon[taxon] != null ? byTaxon[taxon] : new int[0];
+	}
+
+	/**
+	 * Returns the number of quartets that contain the given taxon.
+	 *
+	 * @param taxon The taxon.
+	 * @return The number of quartets.
+	 */
+	int countWith(int taxon) {
+		return taxon < byTaxonSize.length ? byTaxonSize[taxon] : 0;
+	}
+
+	/**
+	 * Returns the list of quartets that contain both given taxa. Only the first
+	 * {@link #countWith(int, int)} elements are valid, and the array may not be
+	 * modified.
+	 *
+	 * @param t1 The first taxon.
+	 * @param t2 The second taxon, different from the first one.
+	 * @return The numbers of the quartets.
+	 */
+	int[] quartetsWith(int t1, int t2) {
+		int slot = findPair(pairKey(t1, t2));
+		return pairKeys[slot] != 0 ? byPair[slot] : new int[0];
+	}
+
+	/**
+	 * Returns the number of quartets that contain both given taxa.
+	 *
+	 * @param t1 The first taxon.
+	 * @param t2 The second taxon, different from the first one.
+	 * @return The number of quartets.
+	 */
+	int countWith(int t1, int t2) {
+		int slot = findPair(pairKey(t1, t2));
+		return pairKeys[slot] != 0 ? byPairSize[slot] : 0;
+	}
+
+	/**
+	 * Adds a quartet to the list of a taxon.
+	 *
+	 * @param taxon The taxon.
+	 * @param id The number of the quartet.
+	 */
+	private void addToTaxon(int taxon, int id) {
+
+		if (taxon >= byTaxon.length) {
+			int length = Math.max(taxon + 1, 2 * byTaxon.length);
+			byTaxon = Arrays.copyOf(byTaxon, length);
+			byTaxonSize = Arrays.copyOf(byTaxonSize, length);
+		}
+
+		if (byTaxon[taxon] == null) {
+			byTaxon[taxon] = new int[8];
+		} else if (byTaxonSize[taxon] == byTaxon[taxon].length) {
+			byTaxon[taxon] = Arrays.copyOf(byTaxon[taxon], 2 * byTaxon[taxon].length);
+		}
+
+		byTaxon[taxon][byTaxonSize[taxon]++] = id;
+	}
+
+	/**
+	 * Adds a quartet to the list of a pair of taxa.
+	 *
+	 * @param t1 The first taxon.
+	 * @param t2 The second taxon.
+	 * @param id The number of the quartet.
+	 */
+	private void addToPair(int t1, int t2, int id) {
+
+		long key = pairKey(t1, t2);
+		int slot = findPair(key);
+
+		if (pairKeys[slot] == 0) {
+			pairKeys[slot] = key;
+			byPair[slot] = new int[4];
+			pairCount++;
+		} else if (byPairSize[slot] == byPair[slot].length) {
+			byPair[slot] = Arrays.copyOf(byPair[slot], 2 * byPair[slot].length);
+		}
+
+		byPair[slot][byPairSize[slot]++] = id;
+	}
+
+	/**
+	 * Returns the slot of a set of four taxa in {@link #setKeys}, or the empty slot
+	 * where it should be put.
+	 *
+	 * @param key The packed set.
+	 * @return The slot.
+	 */
+	private int findSet(long key) {
+		int mask = setKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (setKeys[slot] != 0 && setKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the slot of a pair of taxa in {@link #pairKeys}, or the empty slot where
+	 * it should be put.
+	 *
+	 * @param key The packed pair.
+	 * @return The slot.
+	 */
+	private int findPair(long key) {
+		int mask = pairKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (pairKeys[slot] != 0 && pairKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the size of the hash table of sets of four taxa.
+	 */
+	private void growSets() {
+		long[] oldKeys = setKeys;
+		byte[] oldTopologies = setTopologies;
+		setKeys = new long[2 * oldKeys.length];
+		setTopologies = new byte[2 * oldKeys.length];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = findSet(oldKeys[i]);
+				setKeys[slot] = oldKeys[i];
+				setTopologies[slot] = oldTopologies[i];
+			}
+		}
+	}
+
+	/**
+	 * Doubles the size of the hash table of pairs of taxa.
+	 */
+	private void growPairs() {
+		long[] oldKeys = pairKeys;
+		int[][] oldLists = byPair;
+		int[] oldSizes = byPairSize;
+		pairKeys = new long[2 * oldKeys.length];
+		byPair = new int[2 * oldKeys.length][];
+		byPairSize = new int[2 * oldKeys.length];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = findPair(oldKeys[i]);
+				pairKeys[slot] = oldKeys[i];
+				byPair[slot] = oldLists[i];
+				byPairSize[slot] = oldSizes[i];
+			}
+		}
+	}
+
+	/**
+	 * Packs a set of four different taxa in a <code>long</code>, in sorted order.
+	 *
+	 * @return The packed set. This is never 0.
+	 */
+	private static long setKey(int t1, int t2, int t3, int t4) {
+		int a = Math.min(t1, t2);
+		int b = Math.max(t1, t2);
+		int c = Math.min(t3, t4);
+		int d = Math.max(t3, t4);
+
+		// sort a, b, c, d, knowing that a < b and c < d
+		int min = Math.min(a, c);
+		int max = Math.max(b, d);
+		int e = Math.max(a, c);
+		int f = Math.min(b, d);
+
+		return ((long) min << 48) | ((long) Math.min(e, f) << 32) | ((long) Math.max(e, f) << 16) | max;
+	}
+
+	/**
+	 * Returns the topology bit of the quartet <code>t1 t2 | t3 t4</code>, as described
+	 * in the class documentation.
+	 *
+	 * @return The topology bit.
+	 */
+	private static int topology(int t1, int t2, int t3, int t4) {
+		int min = Math.min(Math.min(t1, t2), Math.min(t3, t4));
+		int partner;
+		if (min == t1) {
+			partner = t2;
+		} else if (min == t2) {
+			partner = t1;
+		} else if (min == t3) {
+			partner = t4;
+		} else {
+			partner = t3;
+		}
+
+		// the rank of the partner among the other three taxa
+		int rank = 0;
+		if (t1 != min && t1 != partner && t1 < partner) rank++;
+		if (t2 != min && t2 != partner && t2 < partner) rank++;
+		if (t3 != min && t3 != partner && t3 < partner) rank++;
+		if (t4 != min && t4 != partner && t4 < partner) rank++;
+
+		return 1 << rank;
+	}
+
+	/**
+	 * Packs a pair of different taxa in a <code>long</code>.
+	 *
+	 * @return The packed pair. This is never 0.
+	 */
+	private static long pairKey(int t1, int t2) {
+		return ((long) Math.min(t1, t2) << 32) | Math.max(t1, t2);
+	}
+
+	/**
+	 * Hashes a packed set or pair.
+	 *
+	 * @param key The key.
+	 * @return The hash.
+	 */
+	private static int hash(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+}
@@ -0,0 +1,252 @@
+package bep.fylogenetica.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Puts the inference rules in a good order, based on how often they gave a quartet
+ * when they were tried by an {@link InferenceTrie}.
+ *
+ * <p>The rules are still tried by number of input quartets, as in
+ * {@link Inference#ORDER}, but within the rules with the same number of input
+ * quartets, the rules that give the most quartets per unit of time come first. Rules
+ * that weren't tried often enough to say anything keep their order, after the rules
+ * that gave quartets; rules that were tried often but never gave a quartet come
+ * last.</p>
+ *
+ * <p>The trie doesn't time every match, since that would cost more than many of the
+ * matches themselves: only one in {@link #SAMPLE_INTERVAL} matches of the last
+ * pattern of a rule is timed and recorded here. The statistics are kept in this
+ * object and not in the rules, so the rules can be shared. Note that the order is
+ * only the order in which the trie tries the patterns: it still takes the quartets of
+ * the first rule in the original order that matches (see {@link InferenceTrie}), so
+ * the order changes how fast the quartets are found, not which ones.</p>
+ *
+ * <p>If the system property {@link #FILE_PROPERTY} is set, the statistics are read
+ * from that file and saved in it, so that a next run of the application can start
+ * with the order of the previous one. Otherwise they are only kept in memory.</p>
+ */
+public class RuleScheduler {
+
+	/**
+	 * The system property with the file the statistics are saved in (the application
+	 * sets it for the <code>--rule-statistics</code> option). If this is not set, the
+	 * statistics are not saved.
+	 */
+	public static final String FILE_PROPERTY = "fylogenetica.ruleStatistics";
+
+	/**
+	 * One in this many matches of the last pattern of a rule is recorded.
+	 */
+	public static final int SAMPLE_INTERVAL = 64;
+
+	/**
+	 * The number of recorded attempts after which the statistics of a rule are used.
+	 */
+	public static final long MIN_ATTEMPTS = 20;
+
+	/**
+	 * The statistics of a rule.
+	 */
+	private static class Statistics {
+
+		/**
+		 * The number of recorded attempts of the rule.
+		 */
+		final LongAdder attempts = new LongAdder();
+
+		/**
+		 * The number of recorded attempts that gave a quartet.
+		 */
+		final LongAdder hits = new LongAdder();
+
+		/**
+		 * The time spent on the recorded attempts, in nanoseconds.
+		 */
+		final LongAdder nanos = new LongAdder();
+	}
+
+	/**
+	 * The rules, in the order in which they were given.
+	 */
+	private final List<Inference> rules;
+
+	/**
+	 * The statistics of every rule. This map isn't changed after the constructor, so
+	 * it can be read by several threads.
+	 */
+	private final IdentityHashMap<Inference, Statistics> statistics = new IdentityHashMap<>();
+
+	/**
+	 * The file the statistics are saved in, or <code>null</code>.
+	 */
+	private final File file;
+
+	/**
+	 * Creates a scheduler for the given rules. If {@link #FILE_PROPERTY} is set and
+	 * the file exists, the statistics in it are read.
+	 *
+	 * @param rules The rules.
+	 */
+	public RuleScheduler(List<Inference> rules) {
+		this(rules, System.getProperty(FILE_PROPERTY) == null ? null : new File(System.getProperty(FILE_PROPERTY)));
+	}
+
+	/**
+	 * Creates a scheduler for the given rules. If the file exists, the statistics in
+	 * it are read.
+	 *
+	 * @param rules The rules.
+	 * @param file The file to read and save the statistics, or <code>null</code> to
+	 * keep them only in memory.
+	 */
+	public RuleScheduler(List<Inference> rules, File file) {
+		this.rules = rules;
+		this.file = file;
+		for (Inference rule : rules) {
+			statistics.put(rule, new Statistics());
+		}
+		if (file != null && file.exists()) {
+			load(file);
+		}
+	}
+
+	/**
+	 * Records an attempt of a rule. This is called by {@link InferenceTrie}, possibly
+	 * from several threads at once.
+	 *
+	 * @param rule The rule.
+	 * @param nanos The time the attempt took, in nanoseconds.
+	 * @param hit Whether the attempt gave a quartet.
+	 */
+	void record(Inference rule, long nanos, boolean hit) {
+		Statistics s = statistics.get(rule);
+		if (s == null) {
+			return;
+		}
+		s.attempts.increment();
+		s.nanos.add(nanos);
+		if (hit) {
+			s.hits.increment();
+		}
+	}
+
+	/**
+	 * Puts the rules in order, as described in the class documentation.
+	 *
+	 * @return The rules in order, in a new list that cannot be modified.
+	 */
+	public List<Inference> order() {
+		ArrayList<Inference> ordered = new ArrayList<>(rules);
+		ordered.sort((r1, r2) -> {
+			if (r1.input.size() != r2.input.size()) {
+				return r1.input.size() - r2.input.size();
+			}
+			if (group(r1) != group(r2)) {
+				return group(r1) - group(r2);
+			}
+			if (group(r1) == 0) {
+				return Double.compare(score(r2), score(r1));
+			}
+			return 0;
+		});
+		return Collections.unmodifiableList(ordered);
+	}
+
+	/**
+	 * Returns the number of quartets a rule gave per millisecond spent on it, in the
+	 * recorded attempts.
+	 *
+	 * @param rule The rule.
+	 * @return The score.
+	 */
+	public double score(Inference rule) {
+		Statistics s = statistics.get(rule);
+		return s.hits.sum() / (s.nanos.sum() / 1e6 + 1e-3);
+	}
+
+	/**
+	 * Returns the group of a rule: 0 if it was tried enough and gave quartets, 1 if it
+	 * wasn't tried enough, and 2 if it was tried enough but never gave a quartet.
+	 *
+	 * @param rule The rule.
+	 * @return The group.
+	 */
+	private int group(Inference rule) {
+		Statistics s = statistics.get(rule);
+		if (s.attempts.sum() < MIN_ATTEMPTS) {
+			return 1;
+		}
+		return s.hits.sum() > 0 ? 0 : 2;
+	}
+
+	/**
+	 * Adds the statistics that are saved in a file to the statistics of the rules.
+	 *
+	 * <p>Every line of the file has the attempts, hits and nanoseconds of a rule,
+	 * followed by the rule itself (see {@link Inference#toString()}). Lines for rules
+	 * that are not in the list are ignored.</p>
+	 *
+	 * @param file The file.
+	 */
+	private void load(File file) {
+
+		HashMap<String, Inference> byName = new HashMap<>();
+		for (Inference rule : rules) {
+			byName.put(rule.toString(), rule);
+		}
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split(" ", 4);
+				if (parts.length < 4) {
+					continue;
+				}
+				Inference rule = byName.get(parts[3]);
+				if (rule == null) {
+					continue;
+				}
+				try {
+					Statistics s = statistics.get(rule);
+					s.attempts.add(Long.parseLong(parts[0]));
+					s.hits.add(Long.parseLong(parts[1]));
+					s.nanos.add(Long.parseLong(parts[2]));
+				} catch (NumberFormatException e) {
+					System.out.println("Invalid line in rule statistics: " + line);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Saves the statistics of the rules that were tried, in the format that is read
+	 * by the constructor. Nothing happens if there is no file.
+	 */
+	public void save() {
+		if (file == null) {
+			return;
+		}
+		try (FileWriter writer = new FileWriter(file)) {
+			for (Inference rule : rules) {
+				Statistics s = statistics.get(rule);
+				if (s.attempts.sum() > 0) {
+					writer.write(s.attempts.sum() + " " + s.hits.sum() + " " + s.nanos.sum() + " " + rule + "\n");
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
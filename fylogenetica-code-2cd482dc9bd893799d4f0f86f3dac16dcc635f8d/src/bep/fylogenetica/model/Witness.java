@@ -7,30 +7,11 @@ public class Witness {
 	
 	public int[] taxa;
 
-	public ArrayList<Witness> connected;
-
-	public boolean tried = false;
-
-	public static void makeGraph(ArrayList<Witness> witnesses) {
-		for (Witness w : witnesses) {
-			w.connected = new ArrayList<>();
-		}
-		for (Witness w1 : witnesses) {
-			for (Witness w2 : witnesses) {
-				if (w1 != w2 && w1.isPair(w2)) {
-					w1.connected.add(w2);
-				}
-			}
-		}
-	}
-
 	public Witness(int firstTaxon, int secondTaxon, int thirdTaxon, int forthTaxon) {
-		connected = new ArrayList<>();
 		taxa = new int[]{firstTaxon, secondTaxon, thirdTaxon, forthTaxon};
 	}
 
 	public Witness(int[] taxa) {
-		connected = new ArrayList<>();
 		this.taxa = taxa;
 	}
 
@@ -46,17 +27,6 @@ public class Witness {
 		toCanonicalForm();
 	}
 
-	public int removeConnected(ArrayList<Witness> witnesses) {
-		witnesses.remove(this);
-		int sum = tried ? 1 : 0;
-		for (Witness w : connected) {
-			if (witnesses.contains(w)) {
-				sum += w.removeConnected(witnesses);
-			}
-		}
-		return sum;
-	}
-
 	public void toCanonicalForm() {
 		Arrays.sort(taxa);
 	}
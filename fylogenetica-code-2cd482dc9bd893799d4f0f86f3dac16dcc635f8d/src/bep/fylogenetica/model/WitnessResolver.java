@@ -0,0 +1,298 @@
+package bep.fylogenetica.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+/**
+ * Uses the rules of an {@link InferenceTrie} on witnesses in rounds, until nothing more
+ * follows, without trying witnesses again that cannot have a new match.
+ *
+ * <p>The quartets that are found in a round are added to the known quartets, and the
+ * next round only tries the witnesses for which these new quartets can matter. This is
+ * a semi-naive evaluation: a match that wasn't possible in the previous round has to
+ * use at least one of the new quartets. If the rules are connected (see
+ * {@link InferenceTrie#isConnected(int)}), all quartets in a match of a rule with
+ * <code>k</code> input quartets lie within <code>k - 1</code> steps of the taxa of the
+ * witness, where a step goes from a taxon to the other taxa of a quartet that
+ * contains it. So, if the nearest new quartet is <code>d</code> steps away from the
+ * witness, only the rules with more than <code>d</code> input quartets have to be
+ * tried, and if it is more than <code>k - 1</code> steps away for the largest rules,
+ * the witness is skipped altogether.</p>
+ *
+ * <p>Witnesses that the resolver hasn't seen before (for example, because the caller
+ * recomputed the witnesses from the matrix) are always tried with all rules. Witnesses
+ * are recognized by their taxa, not by the object.</p>
+ */
+public class WitnessResolver {
+
+	/**
+	 * The rules.
+	 */
+	private InferenceTrie trie;
+
+	/**
+	 * The known quartets. The quartets that are found are added to this.
+	 */
+	private QuartetIndex has;
+
+	/**
+	 * The maximum number of input quartets of the rules to use.
+	 */
+	private int maxInputSize;
+
+	/**
+	 * Whether to match the witnesses in parallel.
+	 */
+	private boolean parallel;
+
+	/**
+	 * Whether to add the other output quartets of every match that are on witnesses,
+	 * instead of only the one on the matched witness.
+	 */
+	private boolean allOutputs;
+
+	/**
+	 * The quartets that were found in the last round, which haven't been used to
+	 * select witnesses yet.
+	 */
+	private ArrayList<Quartet> delta = new ArrayList<>();
+
+	/**
+	 * The witnesses (by their packed taxa) that were tried with all quartets except
+	 * those in {@link #delta}.
+	 */
+	private HashSet<Long> tried = new HashSet<>();
+
+	/**
+	 * The number of rounds so far.
+	 */
+	private int roundCount;
+
+	/**
+	 * The number of times a witness was matched against the rules.
+	 */
+	private long matchCount;
+
+	/**
+	 * The number of quartets that were found for a witness but ignored, because they
+	 * conflict with a known quartet or with a quartet found earlier in the same round.
+	 * Such a quartet can only follow if the known quartets don't come from a tree.
+	 */
+	private long conflictCount;
+
+	/**
+	 * Creates a resolver.
+	 *
+	 * @param trie The rules.
+	 * @param has The known quartets. The quartets that are found are added to this
+	 * index, so it may not be changed by anything else while the resolver is used.
+	 * @param maxInputSize The maximum number of input quartets of the rules to use.
+	 * @param parallel Whether to match the witnesses in parallel, see
+	 * {@link InferenceTrie#useInParallel(QuartetIndex, ArrayList, int)}.
+	 */
+	public WitnessResolver(InferenceTrie trie, QuartetIndex has, int maxInputSize, boolean parallel) {
+		this(trie, has, maxInputSize, parallel, false);
+	}
+
+	/**
+	 * Creates a resolver.
+	 *
+	 * @param trie The rules.
+	 * @param has The known quartets. The quartets that are found are added to this
+	 * index, so it may not be changed by anything else while the resolver is used.
+	 * @param maxInputSize The maximum number of input quartets of the rules to use.
+	 * @param parallel Whether to match the witnesses in parallel.
+	 * @param allOutputs Whether to add the other output quartets of every match that
+	 * are on witnesses, so that one match may resolve several witnesses. This usually
+	 * saves rounds.
+	 */
+	public WitnessResolver(InferenceTrie trie, QuartetIndex has, int maxInputSize, boolean parallel, boolean allOutputs) {
+		this.trie = trie;
+		this.has = has;
+		this.maxInputSize = maxInputSize;
+		this.parallel = parallel;
+		this.allOutputs = allOutputs;
+	}
+
+	/**
+	 * Returns the number of rounds so far.
+	 * @return The number of rounds.
+	 */
+	public int getRoundCount() {
+		return roundCount;
+	}
+
+	/**
+	 * Returns the number of times a witness was matched against the rules so far.
+	 * @return The number of matches.
+	 */
+	public long getMatchCount() {
+		return matchCount;
+	}
+
+	/**
+	 * Returns the number of quartets that were ignored so far because they conflict
+	 * with other quartets. Their witnesses are not resolved, and a witness is counted
+	 * again in every round in which it is tried.
+	 * @return The number of conflicts.
+	 */
+	public long getConflictCount() {
+		return conflictCount;
+	}
+
+	/**
+	 * Uses the rules in rounds, until no quartets are found anymore or all witnesses
+	 * are resolved.
+	 *
+	 * @param witnesses The witnesses. The resolved ones are removed.
+	 * @return All quartets that were found. They are already added to the known
+	 * quartets.
+	 */
+	public ArrayList<Quartet> resolve(ArrayList<Witness> witnesses) {
+
+		ArrayList<Quartet> added = new ArrayList<>();
+
+		while (!witnesses.isEmpty()) {
+			ArrayList<Quartet> add = round(witnesses);
+			if (add.isEmpty()) {
+				break;
+			}
+			added.addAll(add);
+		}
+
+		return added;
+	}
+
+	/**
+	 * Does one round: tries the witnesses that can have a new match.
+	 *
+	 * @param witnesses The witnesses. The resolved ones are removed.
+	 * @return The quartets that were found in this round. They are already added to the
+	 * known quartets.
+	 */
+	public ArrayList<Quartet> round(ArrayList<Witness> witnesses) {
+
+		roundCount++;
+
+		int[] distance = distanceToDelta();
+		boolean connected = trie.isConnected(maxInputSize);
+
+		// select the witnesses to try, with the smallest rules that can match them
+		ArrayList<Witness> selected = new ArrayList<>();
+		ArrayList<Integer> minInputSizes = new ArrayList<>();
+		for (Witness w : witnesses) {
+			if (!tried.contains(key(w)) || !connected) {
+				selected.add(w);
+				minInputSizes.add(0);
+				continue;
+			}
+			int d = Integer.MAX_VALUE;
+			for (int taxon : w.taxa) {
+				if (taxon < distance.length) {
+					d = Math.min(d, distance[taxon]);
+				}
+			}
+			if (d < maxInputSize) {
+				selected.add(w);
+				minInputSizes.add(d + 1);
+			}
+		}
+
+		int[] mins = new int[selected.size()];
+		for (int i = 0; i < mins.length; i++) {
+			mins[i] = minInputSizes.get(i);
+		}
+
+		ArrayList<Witness> remaining = new ArrayList<>(selected);
+		ArrayList<Witness> conflicting = new ArrayList<>();
+		ArrayList<Quartet> add = trie.use(has, remaining, mins, maxInputSize, parallel, allOutputs, conflicting);
+		matchCount += selected.size();
+		conflictCount += conflicting.size();
+
+		// remove the resolved witnesses, and remember the others as tried, except the
+		// ones whose quartet conflicts: a rule matches them already, so another rule
+		// with more input quartets could only be taken if the smaller rules are tried
+		// again too
+		IdentityHashMap<Witness, Boolean> resolved = new IdentityHashMap<>();
+		for (Witness w : selected) {
+			resolved.put(w, true);
+		}
+		for (Witness w : remaining) {
+			resolved.remove(w);
+			tried.add(key(w));
+		}
+		for (Witness w : conflicting) {
+			tried.remove(key(w));
+		}
+		witnesses.removeIf(resolved::containsKey);
+
+		has.addAll(add);
+		delta = add;
+
+		return add;
+	}
+
+	/**
+	 * Determines for every taxon the number of steps to the nearest quartet in
+	 * {@link #delta}, up to <code>maxInputSize - 1</code> steps. A step goes from a taxon to
+	 * the other taxa of a known quartet that contains it.
+	 *
+	 * @return For every taxon, the distance, or {@link Integer#MAX_VALUE} if it is
+	 * further away.
+	 */
+	private int[] distanceToDelta() {
+
+		int taxonCount = 0;
+		for (int i = 0; i < has.size(); i++) {
+			for (int x = 0; x < 4; x++) {
+				taxonCount = Math.max(taxonCount, has.taxa[4 * i + x] + 1);
+			}
+		}
+
+		int[] distance = new int[taxonCount];
+		Arrays.fill(distance, Integer.MAX_VALUE);
+
+		ArrayList<Integer> frontier = new ArrayList<>();
+		for (Quartet q : delta) {
+			for (int taxon : new int[]{q.left1, q.left2, q.right1, q.right2}) {
+				if (distance[taxon] != 0) {
+					distance[taxon] = 0;
+					frontier.add(taxon);
+				}
+			}
+		}
+
+		for (int d = 1; d < maxInputSize && !frontier.isEmpty(); d++) {
+			ArrayList<Integer> next = new ArrayList<>();
+			for (int taxon : frontier) {
+				int[] quartets = has.quartetsWith(taxon);
+				for (int c = 0; c < has.countWith(taxon); c++) {
+					for (int x = 0; x < 4; x++) {
+						int other = has.taxa[4 * quartets[c] + x];
+						if (distance[other] == Integer.MAX_VALUE) {
+							distance[other] = d;
+							next.add(other);
+						}
+					}
+				}
+			}
+			frontier = next;
+		}
+
+		return distance;
+	}
+
+	/**
+	 * Packs the taxa of a witness, sorted, in a <code>long</code>.
+	 *
+	 * @param w The witness.
+	 * @return The key.
+	 */
+	private static long key(Witness w) {
+		int[] taxa = Arrays.copyOf(w.taxa, 4);
+		Arrays.sort(taxa);
+		return ((long) taxa[0] << 48) | ((long) taxa[1] << 32) | ((long) taxa[2] << 16) | taxa[3];
+	}
+}
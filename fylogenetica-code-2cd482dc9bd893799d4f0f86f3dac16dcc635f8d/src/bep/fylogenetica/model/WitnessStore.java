@@ -0,0 +1,301 @@
+package bep.fylogenetica.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A set of witnesses, identified by their taxa, that can be searched quickly.
+ *
+ * <p>Besides checking whether a witness is in the set, the store keeps a queue of
+ * the witnesses that haven't been tried yet.</p>
+ *
+ * <h3>Implementation details</h3>
+ * <p>The witnesses are numbered in the order in which they are added. A set of four
+ * taxa <code>a &lt; b &lt; c &lt; d</code> is packed in a <code>long</code> as its
+ * combinatorial rank <code>C(a, 1) + C(b, 2) + C(c, 3) + C(d, 4)</code>, which numbers
+ * all sets of four taxa without gaps. These are kept in an open-addressing hash
+ * table. A witness that is removed keeps its number and its slot, and gets them back
+ * when it is added again. Taxa have to be smaller than 65536.</p>
+ */
+public class WitnessStore {
+
+	/**
+	 * The witnesses, by number.
+	 */
+	private Witness[] witnesses = new Witness[16];
+
+	/**
+	 * For every witness, the rank of its taxa.
+	 */
+	private long[] ranks = new long[16];
+
+	/**
+	 * For every witness, whether it is removed.
+	 */
+	private boolean[] removed = new boolean[16];
+
+	/**
+	 * For every witness, whether it is in {@link #queue}.
+	 */
+	private boolean[] queued = new boolean[16];
+
+	/**
+	 * The number of witnesses that were ever added, including the removed ones.
+	 */
+	private int idCount;
+
+	/**
+	 * The number of witnesses in the store.
+	 */
+	private int size;
+
+	/**
+	 * The hash table of witnesses: the rank plus one, or 0 for an empty slot.
+	 */
+	private long[] setKeys = new long[32];
+
+	/**
+	 * For every slot in {@link #setKeys}, the number of the witness.
+	 */
+	private int[] setIds = new int[32];
+
+	/**
+	 * The queue of witnesses that haven't been tried yet, as a ring buffer.
+	 */
+	private int[] queue = new int[16];
+
+	/**
+	 * The position of the first witness in {@link #queue}.
+	 */
+	private int queueHead;
+
+	/**
+	 * The number of witnesses in {@link #queue}.
+	 */
+	private int queueSize;
+
+	/**
+	 * Creates an empty store.
+	 */
+	public WitnessStore() {
+	}
+
+	/**
+	 * Creates a store that contains the given witnesses.
+	 *
+	 * @param witnesses The witnesses to add.
+	 */
+	public WitnessStore(Collection<Witness> witnesses) {
+		for (Witness w : witnesses) {
+			add(w);
+		}
+	}
+
+	/**
+	 * Returns the number of witnesses in the store.
+	 * @return The number of witnesses.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a witness, and puts it at the end of the queue of untried witnesses.
+	 *
+	 * @param w The witness to add.
+	 * @return <code>true</code> if the witness was added, <code>false</code> if a
+	 * witness on the same taxa was already in the store.
+	 */
+	public boolean add(Witness w) {
+
+		long rank = rank(w.taxa);
+		int slot = findSet(rank);
+
+		int id;
+		if (setKeys[slot] != 0) {
+			id = setIds[slot];
+			if (!removed[id]) {
+				return false;
+			}
+			removed[id] = false;
+			witnesses[id] = w;
+		} else {
+			if (idCount == witnesses.length) {
+				witnesses = Arrays.copyOf(witnesses, 2 * idCount);
+				ranks = Arrays.copyOf(ranks, 2 * idCount);
+				removed = Arrays.copyOf(removed, 2 * idCount);
+				queued = Arrays.copyOf(queued, 2 * idCount);
+			}
+			id = idCount++;
+			witnesses[id] = w;
+			ranks[id] = rank;
+			setKeys[slot] = rank + 1;
+			setIds[slot] = id;
+			if (2 * idCount > setKeys.length) {
+				growSets();
+			}
+		}
+
+		size++;
+		enqueue(id);
+		return true;
+	}
+
+	/**
+	 * Removes the witness on the same taxa as the given witness.
+	 *
+	 * @param w The witness.
+	 * @return Whether a witness was removed.
+	 */
+	public boolean remove(Witness w) {
+		int id = find(w.taxa);
+		if (id == -1) {
+			return false;
+		}
+		removed[id] = true;
+		witnesses[id] = null;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Returns whether a witness on the same taxa as the given witness is in the store.
+	 *
+	 * @param w The witness.
+	 * @return Whether it is in the store.
+	 */
+	public boolean contains(Witness w) {
+		return find(w.taxa) != -1;
+	}
+
+	/**
+	 * Takes the next witness from the queue of untried witnesses. A witness is put in
+	 * the queue when it is added, and removed witnesses are skipped.
+	 *
+	 * @return The witness, or <code>null</code> if all witnesses are tried.
+	 */
+	public Witness poll() {
+		while (queueSize > 0) {
+			int id = queue[queueHead];
+			queueHead = (queueHead + 1) % queue.length;
+			queueSize--;
+			queued[id] = false;
+			if (!removed[id]) {
+				return witnesses[id];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of the witness on the given taxa, if it is in the store.
+	 *
+	 * @param taxa The taxa, in any order.
+	 * @return The number, or -1 if there is no such witness.
+	 */
+	private int find(int[] taxa) {
+		int slot = findSet(rank(taxa));
+		if (setKeys[slot] == 0 || removed[setIds[slot]]) {
+			return -1;
+		}
+		return setIds[slot];
+	}
+
+	/**
+	 * Puts a witness at the end of the queue, if it isn't in the queue yet.
+	 *
+	 * @param id The number of the witness.
+	 */
+	private void enqueue(int id) {
+		if (queued[id]) {
+			return;
+		}
+		queued[id] = true;
+		if (queueSize == queue.length) {
+			int[] newQueue = new int[2 * queue.length];
+			for (int i = 0; i < queueSize; i++) {
+				newQueue[i] = queue[(queueHead + i) % queue.length];
+			}
+			queue = newQueue;
+			queueHead = 0;
+		}
+		queue[(queueHead + queueSize) % queue.length] = id;
+		queueSize++;
+	}
+
+	/**
+	 * Returns the slot of a witness in {@link #setKeys}, or the empty slot where it
+	 * should be put.
+	 *
+	 * @param rank The rank of its taxa.
+	 * @return The slot.
+	 */
+	private int findSet(long rank) {
+		int mask = setKeys.length - 1;
+		int slot = hash(rank + 1) & mask;
+		while (setKeys[slot] != 0 && setKeys[slot] != rank + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the size of the hash table of witnesses.
+	 */
+	private void growSets() {
+		long[] oldKeys = setKeys;
+		int[] oldIds = setIds;
+		setKeys = new long[2 * oldKeys.length];
+		setIds = new int[2 * oldKeys.length];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = findSet(oldKeys[i] - 1);
+				setKeys[slot] = oldKeys[i];
+				setIds[slot] = oldIds[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the combinatorial rank of a set of four taxa, as described in the class
+	 * documentation.
+	 *
+	 * @param taxa The taxa, in any order.
+	 * @return The rank.
+	 */
+	static long rank(int[] taxa) {
+		int[] s = sorted(taxa);
+		return binomial(s[0], 1) + binomial(s[1], 2) + binomial(s[2], 3) + binomial(s[3], 4);
+	}
+
+	/**
+	 * Returns <code>n</code> choose <code>k</code>, for <code>k</code> from 1 to 4.
+	 */
+	private static long binomial(long n, int k) {
+		long result = n;
+		for (int i = 1; i < k; i++) {
+			// result is n choose i, so this division is exact
+			result = result * (n - i) / (i + 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a sorted copy of four taxa.
+	 */
+	private static int[] sorted(int[] taxa) {
+		int[] s = Arrays.copyOf(taxa, 4);
+		Arrays.sort(s);
+		return s;
+	}
+
+	/**
+	 * Spreads the bits of a key over the lower bits.
+	 *
+	 * @param key The key.
+	 * @return The hash.
+	 */
+	private static int hash(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+}
@@ -0,0 +1,182 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import bep.fylogenetica.io.InferenceRuleFile;
+import bep.fylogenetica.model.Inference;
+import bep.fylogenetica.model.Quartet;
+import bep.fylogenetica.model.QuartetIndex;
+
+/**
+ * Removes the inference rules that are subsumed by other rules from a rule file, and
+ * reports which rules were removed.
+ *
+ * <p>Rule <code>S</code> subsumes rule <code>R</code> if the labels of <code>S</code>
+ * can be relabelled to labels of <code>R</code>, such that every input quartet of
+ * <code>S</code> becomes an input quartet of <code>R</code>, the first output quartet
+ * of <code>S</code> becomes the first output quartet of <code>R</code>, and every other
+ * output quartet of <code>R</code> is one of the output quartets of <code>S</code>
+ * after the relabelling. Then whenever <code>R</code> gives quartets for a witness,
+ * <code>S</code> gives the same quartets for it, also when all outputs are used, so
+ * <code>R</code> isn't needed. As when the rules are used, two labels of
+ * <code>S</code> may get the same label of <code>R</code>. This is checked by
+ * matching <code>S</code> on the first output quartet of <code>R</code>, with the
+ * input quartets of <code>R</code> as the known quartets, and comparing the outputs
+ * for every relabelling that is found.</p>
+ *
+ * <p>Note that a rule that only follows from a chain of other rules is kept: the
+ * quartets in the middle of the chain are not necessarily on witnesses, so they
+ * might never be found.</p>
+ *
+ * <p>The rules are checked in the order of {@link Inference#ORDER}, only against the
+ * rules that are kept, so of rules that are the same up to relabelling, the first one
+ * is kept. Run this with the rule file to read, the rule file to write and the report
+ * file to write as arguments. The written rule file can be converted with
+ * {@link InferenceRuleFile}.</p>
+ */
+public class RuleMinimizer {
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 3) {
+			System.out.println("Usage: java RuleMinimizer <rules.txt> <minimized.txt> <report.txt>");
+			return;
+		}
+
+		String header;
+		List<Inference> rules;
+		try (Scanner s = new Scanner(new File(args[0]))) {
+			header = s.nextLine();
+		}
+		try (InputStream in = new FileInputStream(new File(args[0]))) {
+			rules = InferenceRuleFile.readText(in);
+		}
+
+		ArrayList<Inference> kept = new ArrayList<>();
+		ArrayList<String> report = new ArrayList<>();
+		int maxInputSize = 0;
+		for (Inference rule : rules) {
+			maxInputSize = Math.max(maxInputSize, rule.input.size());
+		}
+		int[] keptPerSize = new int[maxInputSize + 1];
+		int[] removedPerSize = new int[maxInputSize + 1];
+
+		for (Inference rule : rules) {
+			Inference by = findSubsuming(rule, kept);
+			if (by == null) {
+				kept.add(rule);
+				keptPerSize[rule.input.size()]++;
+			} else {
+				report.add(format(rule) + "\n  subsumed by " + format(by));
+				removedPerSize[rule.input.size()]++;
+			}
+		}
+
+		try (FileWriter writer = new FileWriter(new File(args[1]))) {
+			writer.write(header + "\n");
+			writer.write(kept.size() + "\n");
+			for (Inference rule : kept) {
+				writer.write(format(rule) + "\n");
+			}
+		}
+
+		try (FileWriter writer = new FileWriter(new File(args[2]))) {
+			writer.write("Rules read: " + rules.size() + ", kept: " + kept.size() + ", removed: " + report.size() + "\n");
+			for (int i = 0; i <= maxInputSize; i++) {
+				if (keptPerSize[i] + removedPerSize[i] > 0) {
+					writer.write("  " + i + " input quartets: kept " + keptPerSize[i] + ", removed " + removedPerSize[i] + "\n");
+				}
+			}
+			writer.write("\n");
+			for (String line : report) {
+				writer.write(line + "\n");
+			}
+		}
+
+		System.out.println("Kept " + kept.size() + " of " + rules.size() + " rules");
+	}
+
+	/**
+	 * Finds a rule that subsumes the given rule.
+	 *
+	 * @param rule The rule.
+	 * @param candidates The rules that may subsume it.
+	 * @return The first rule that subsumes it, or <code>null</code> if there is none.
+	 */
+	static Inference findSubsuming(Inference rule, List<Inference> candidates) {
+
+		Quartet out = rule.output.get(0);
+		int l1 = out.left1, l2 = out.left2, r1 = out.right1, r2 = out.right2;
+		// the 8 notations of the output quartet
+		int[][] notations = new int[][]{
+			{l1, l2, r1, r2}, {l2, l1, r1, r2}, {l1, l2, r2, r1}, {l2, l1, r2, r1},
+			{r1, r2, l1, l2}, {r1, r2, l2, l1}, {r2, r1, l1, l2}, {r2, r1, l2, l1}};
+		QuartetIndex has = new QuartetIndex(rule.input);
+
+		for (Inference candidate : candidates) {
+			if (candidate.input.size() > rule.input.size()) {
+				continue;
+			}
+			for (int[] taxa : notations) {
+				if (candidate.match(has, taxa, map -> coversOutputs(candidate, map, rule))) {
+					return candidate;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether every output quartet of a rule is an output quartet of another
+	 * rule, after relabelling.
+	 *
+	 * @param candidate The other rule.
+	 * @param map For every label of the other rule, its label in the rule, or
+	 * <code>-1</code>.
+	 * @param rule The rule.
+	 * @return Whether the outputs are covered.
+	 */
+	private static boolean coversOutputs(Inference candidate, int[] map, Inference rule) {
+
+		ArrayList<Quartet> outputs = new ArrayList<>();
+		for (Quartet q : candidate.output) {
+			int[] labels = new int[]{q.left1, q.left2, q.right1, q.right2};
+			boolean mapped = true;
+			for (int label : labels) {
+				mapped &= label < map.length && map[label] != -1;
+			}
+			if (mapped) {
+				outputs.add(new Quartet(map[q.left1], map[q.left2], map[q.right1], map[q.right2]));
+			}
+		}
+
+		return outputs.containsAll(rule.output);
+	}
+
+	/**
+	 * Writes a rule in the format of the rule file.
+	 *
+	 * @param rule The rule.
+	 * @return The rule as a line of text, without line break.
+	 */
+	static String format(Inference rule) {
+		return format(rule.input) + " -> " + format(rule.output);
+	}
+
+	private static String format(List<Quartet> quartets) {
+		StringBuilder s = new StringBuilder("[");
+		for (int i = 0; i < quartets.size(); i++) {
+			Quartet q = quartets.get(i);
+			if (i > 0) {
+				s.append(", ");
+			}
+			s.append("(" + q.left1 + " " + q.left2 + "|" + q.right1 + " " + q.right2 + ")");
+		}
+		return s.append("]").toString();
+	}
+}
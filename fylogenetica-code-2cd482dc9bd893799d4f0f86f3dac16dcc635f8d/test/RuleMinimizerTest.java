@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import bep.fylogenetica.model.Inference;
+import bep.fylogenetica.model.Quartet;
+
+/**
+ * Tests for {@link RuleMinimizer}. These are run from the project directory, so that
+ * the rules can be read.
+ */
+public class RuleMinimizerTest {
+
+	/**
+	 * Checks that every rule subsumes itself.
+	 */
+	@Test
+	public void everyRuleSubsumesItself() throws Exception {
+		for (Inference rule : Inference.read()) {
+			assertSame(RuleMinimizer.format(rule), rule, RuleMinimizer.findSubsuming(rule, Arrays.asList(rule)));
+		}
+	}
+
+	/**
+	 * Checks that a rule subsumes the rule with an extra input quartet on new labels.
+	 */
+	@Test
+	public void extraInputIsSubsumed() throws Exception {
+		for (Inference rule : Inference.read()) {
+			int n = rule.taxaSize;
+			ArrayList<Quartet> input = copy(rule.input);
+			input.add(new Quartet(n, n + 1, n + 2, n + 3));
+			Inference extended = new Inference(input, copy(rule.output));
+
+			assertSame(RuleMinimizer.format(rule), rule, RuleMinimizer.findSubsuming(extended, Arrays.asList(rule)));
+			assertNull(RuleMinimizer.format(rule), RuleMinimizer.findSubsuming(rule, Arrays.asList(extended)));
+		}
+	}
+
+	/**
+	 * Checks that a rule with only the first output quartet of another rule doesn't
+	 * subsume it, but is subsumed by it.
+	 */
+	@Test
+	public void fewerOutputsDoNotSubsume() throws Exception {
+		int checked = 0;
+		for (Inference rule : Inference.read()) {
+			if (rule.output.size() < 2) {
+				continue;
+			}
+			Inference firstOnly = new Inference(copy(rule.input), copy(rule.output.subList(0, 1)));
+
+			assertNull(RuleMinimizer.format(rule), RuleMinimizer.findSubsuming(rule, Arrays.asList(firstOnly)));
+			assertSame(RuleMinimizer.format(rule), rule, RuleMinimizer.findSubsuming(firstOnly, Arrays.asList(rule)));
+			checked++;
+		}
+		assertTrue(checked > 0);
+	}
+
+	private static ArrayList<Quartet> copy(List<Quartet> quartets) {
+		ArrayList<Quartet> result = new ArrayList<>();
+		for (Quartet q : quartets) {
+			result.add(new Quartet(q.left1, q.left2, q.right1, q.right2));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,87 @@
+package bep.fylogenetica.algorithm;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link DenseVector}.
+ */
+public class DenseVectorTest {
+
+	/**
+	 * Checks that the vector of a cyclic order plus the reversal delta of a block is
+	 * the vector of the order with that block reversed, for every block.
+	 */
+	@Test
+	public void reversalDeltaEqualsReversedOrder() {
+		Random r = new Random(37);
+		for (int n = 4; n <= 20; n++) {
+			for (int rep = 0; rep < 5; rep++) {
+				checkAllBlocks(randomOrder(n, r));
+			}
+		}
+	}
+
+	/**
+	 * Checks the reversal deltas from many threads at once, with two taxon counts
+	 * mixed, so that the cached taxon masks are replaced while other threads use
+	 * them.
+	 */
+	@Test
+	public void reversalDeltaFromParallelThreads() {
+		IntStream.range(0, 200).parallel().forEach(i -> {
+			Random r = new Random(i);
+			checkAllBlocks(randomOrder(i % 2 == 0 ? 9 : 14, r));
+		});
+	}
+
+	/**
+	 * Checks {@link CyclicOrder#determineReversalDelta(int, int)} for every block of
+	 * an order.
+	 *
+	 * @param f The order.
+	 */
+	private static void checkAllBlocks(CyclicOrder f) {
+		int n = f.size();
+		DenseVector xf = f.determineVector();
+		for (int begin = 0; begin < n; begin++) {
+			for (int end = begin; end <= n; end++) {
+				CyclicOrder g = new CyclicOrder(f);
+				g.reverse(begin, end);
+
+				DenseVector xg = new DenseVector(n);
+				xg.setToSum(xf, f.determineReversalDelta(begin, end));
+
+				DenseVector difference = new DenseVector(n);
+				difference.setToSum(xg, g.determineVector());
+				assertTrue("reversing " + begin + ".." + end + " of " + f, difference.isZeroVector());
+			}
+		}
+	}
+
+	/**
+	 * Returns a random cyclic order.
+	 *
+	 * @param n The number of taxa.
+	 * @param r The random generator.
+	 * @return The order.
+	 */
+	private static CyclicOrder randomOrder(int n, Random r) {
+		ArrayList<Integer> taxa = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			taxa.add(i);
+		}
+		Collections.shuffle(taxa, r);
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = taxa.get(i);
+		}
+		return new CyclicOrder(order);
+	}
+}
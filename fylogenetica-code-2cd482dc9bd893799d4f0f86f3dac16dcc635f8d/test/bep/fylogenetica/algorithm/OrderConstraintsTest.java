@@ -0,0 +1,169 @@
+package bep.fylogenetica.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import bep.fylogenetica.model.Quartet;
+
+/**
+ * Tests for {@link OrderConstraints}. Every case is checked against all cyclic orders
+ * of its taxa, and uses quartets for which the conforming vector is not cyclic, as in
+ * the reconstruct tree action.
+ */
+public class OrderConstraintsTest {
+
+	/**
+	 * Checks quartets that allow only one cyclic order: the heuristic picks that order.
+	 */
+	@Test
+	public void uniqueOrder() throws Exception {
+		GF2Matrix m = matrix(6,
+				new Quartet(1, 2, 4, 5), new Quartet(0, 4, 1, 2), new Quartet(1, 5, 2, 4),
+				new Quartet(1, 5, 2, 3), new Quartet(0, 3, 1, 4), new Quartet(0, 2, 1, 5),
+				new Quartet(0, 3, 4, 5), new Quartet(0, 1, 4, 5), new Quartet(0, 5, 3, 4));
+		ArrayList<String> orders = conformingOrders(m);
+		assertEquals(1, orders.size());
+
+		OrderConstraints constraints = constraints(m);
+		assertFalse(constraints.hasCycle());
+		CyclicOrder c = constraints.determineOrder();
+		assertNotNull(c);
+		assertEquals(orders.get(0), canonical(c));
+	}
+
+	/**
+	 * Checks quartets that allow many cyclic orders: the heuristic picks one of them.
+	 */
+	@Test
+	public void ambiguousOrder() throws Exception {
+		GF2Matrix m = matrix(6, new Quartet(0, 4, 1, 2), new Quartet(0, 3, 1, 4));
+		ArrayList<String> orders = conformingOrders(m);
+		assertTrue(orders.size() > 1);
+
+		OrderConstraints constraints = constraints(m);
+		assertFalse(constraints.hasCycle());
+		CyclicOrder c = constraints.determineOrder();
+		assertNotNull(c);
+		assertTrue(orders.contains(canonical(c)));
+	}
+
+	/**
+	 * Checks quartets whose fixed constraints contain a cycle: there is no cyclic
+	 * order, and the heuristic doesn't give one.
+	 */
+	@Test
+	public void cycle() throws Exception {
+		GF2Matrix m = matrix(6,
+				new Quartet(1, 4, 2, 5), new Quartet(0, 1, 2, 3), new Quartet(1, 5, 2, 4),
+				new Quartet(0, 4, 2, 3), new Quartet(0, 5, 2, 4), new Quartet(0, 2, 1, 3),
+				new Quartet(1, 3, 4, 5), new Quartet(0, 3, 1, 5));
+		assertTrue(conformingOrders(m).isEmpty());
+
+		OrderConstraints constraints = constraints(m);
+		assertTrue(constraints.hasCycle());
+		assertNull(constraints.determineOrder());
+	}
+
+	/**
+	 * Makes the reduced matrix for some quartets.
+	 */
+	private static GF2Matrix matrix(int n, Quartet... quartets) {
+		GF2Matrix m = new GF2MatrixDense(n);
+		for (Quartet q : quartets) {
+			m.addRowForQuartet(q);
+		}
+		m.rowReduce(false);
+		assertTrue(m.isConsistent());
+		return m;
+	}
+
+	/**
+	 * Collects the constraints from the conforming vector of a matrix, after checking
+	 * that this vector is not cyclic.
+	 */
+	private static OrderConstraints constraints(GF2Matrix m) throws Exception {
+		DenseVector v = m.determineConformingVector();
+		assertNull(v.determineOrder());
+		return new OrderConstraints(m, v);
+	}
+
+	/**
+	 * Returns all cyclic orders whose vectors conform to a matrix, in the form of
+	 * {@link #canonical(CyclicOrder)}, by trying every permutation of the taxa after
+	 * taxon 0.
+	 */
+	private static ArrayList<String> conformingOrders(GF2Matrix m) {
+		int n = m.taxonCount;
+		int[] p = new int[n];
+		for (int i = 0; i < n; i++) {
+			p[i] = i;
+		}
+
+		ArrayList<String> result = new ArrayList<>();
+		do {
+			CyclicOrder c = new CyclicOrder(p.clone());
+			if (m.conformsToMatrix(c.determineVector()) && !result.contains(canonical(c))) {
+				result.add(canonical(c));
+			}
+		} while (nextPermutation(p));
+		return result;
+	}
+
+	/**
+	 * Returns a cyclic order as a string that is the same for the order and its
+	 * mirror image: starting with taxon 0, in the direction in which the taxon after 0
+	 * is smaller than the one before it.
+	 */
+	private static String canonical(CyclicOrder c) {
+		int n = c.size();
+		int start = 0;
+		while (c.get(start) != 0) {
+			start++;
+		}
+		int step = c.get((start + 1) % n) < c.get((start + n - 1) % n) ? 1 : n - 1;
+
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			s.append(c.get((start + i * step) % n)).append(' ');
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Turns <code>p</code> into the next permutation in lexicographic order, keeping
+	 * the first element in place.
+	 *
+	 * @return Whether there was a next permutation.
+	 */
+	private static boolean nextPermutation(int[] p) {
+		int i = p.length - 2;
+		while (i >= 1 && p[i] >= p[i + 1]) {
+			i--;
+		}
+		if (i < 1) {
+			return false;
+		}
+		int j = p.length - 1;
+		while (p[j] <= p[i]) {
+			j--;
+		}
+		swap(p, i, j);
+		for (int a = i + 1, b = p.length - 1; a < b; a++, b--) {
+			swap(p, a, b);
+		}
+		return true;
+	}
+
+	private static void swap(int[] p, int i, int j) {
+		int h = p[i];
+		p[i] = p[j];
+		p[j] = h;
+	}
+}
@@ -0,0 +1,135 @@
+package bep.fylogenetica.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import bep.fylogenetica.algorithm.GF2MatrixDense;
+import bep.fylogenetica.model.Inference;
+import bep.fylogenetica.model.Quartet;
+import bep.fylogenetica.model.TreeFixtures;
+
+/**
+ * Tests for {@link InferenceAnalysis}. These are run from the project directory, so
+ * that the rules can be read.
+ */
+public class InferenceAnalysisTest {
+
+	/**
+	 * The results of {@link InferenceAnalysis#steps(int, ArrayList, bep.fylogenetica.model.InferenceTrie, int)}
+	 * with 5 as the maximum inference on seeded inputs, as given by the original
+	 * analysis that used the rules one by one. Every line has the kind of input (0 for
+	 * consistent random quartets, 1 for some of the quartets of a random tree, see
+	 * {@link #input(int, int, int)}), the seed, the number of taxa, the result, and the
+	 * number and hash code of the quartets afterwards (see {@link #describe(boolean[],
+	 * ArrayList)}).
+	 */
+	private static final String[] EXPECTED = {
+		"0 0 7 [true, true, true, true, true] 18 a69fe4c3",
+		"0 2 9 [false, false, false, true, true] 32 8a8fb266",
+		"0 3 10 [false, true, true, true, true] 53 2bbb72a9",
+		"0 19 8 [false, true, true, true, true] 26 a67ca397",
+		"0 25 8 [false, false, false, false, true] 18 5eaef504",
+		"0 30 7 [true, true, true, true, true] 21 de25b418",
+		"0 49 8 [false, true, true, true, true] 31 374b8dfd",
+		"1 1 8 [false, false, false, true, true] 16 149a1df4",
+		"1 5 12 [false, false, false, false, false] 68 b75c01bb",
+		"1 8 9 [false, true, true, true, true] 29 b1268b0e",
+		"1 17 12 [true, true, true, true, true] 122 50574952",
+		"1 20 9 [false, false, false, false, true] 29 bc93c12e",
+	};
+
+	/**
+	 * Checks that the analysis gives the same results and the same quartets as the
+	 * original analysis on the seeded inputs, also on inputs that don't come from a
+	 * tree, where the rules may give different quartets for the same witness.
+	 */
+	@Test
+	public void stepsMatchesOriginalAnalysis() throws Exception {
+		List<Inference> rules = Inference.read();
+
+		for (String line : EXPECTED) {
+			String[] parts = line.split(" ", 4);
+			int kind = Integer.parseInt(parts[0]);
+			int seed = Integer.parseInt(parts[1]);
+			int n = Integer.parseInt(parts[2]);
+
+			ArrayList<Quartet> quartets = input(kind, seed, n);
+			InferenceAnalysis analysis = new InferenceAnalysis(n, 5, 1, rules, 1, new AtomicInteger(), 1, 0);
+			boolean[] out = analysis.steps(n, quartets, analysis.trie, 5);
+
+			assertEquals(line, parts[3], describe(out, quartets));
+		}
+	}
+
+	/**
+	 * Makes a seeded input.
+	 *
+	 * @param kind 0 for random quartets that give a consistent matrix, 1 for some of
+	 * the quartets of a random tree.
+	 * @param seed The seed.
+	 * @param n The number of taxa.
+	 * @return The quartets.
+	 */
+	private static ArrayList<Quartet> input(int kind, int seed, int n) {
+		Random r = new Random(seed * 31 + kind);
+		ArrayList<Quartet> quartets = new ArrayList<>();
+
+		if (kind == 0) {
+			int count = n + r.nextInt(3 * n);
+			GF2MatrixDense m = new GF2MatrixDense(n);
+			for (int i = 0; i < 4 * count && quartets.size() < count; i++) {
+				Quartet q = randomQuartet(n, r);
+				m.addRowForQuartet(q);
+				m.rowReduce(false);
+				if (m.isConsistent()) {
+					quartets.add(q);
+				} else {
+					m = new GF2MatrixDense(n);
+					for (Quartet p : quartets) {
+						m.addRowForQuartet(p);
+					}
+					m.rowReduce(false);
+				}
+			}
+		} else {
+			quartets.addAll(TreeFixtures.someQuartets(TreeFixtures.randomTree(n, r).getQuartets(n), r));
+		}
+
+		return quartets;
+	}
+
+	private static Quartet randomQuartet(int n, Random r) {
+		Quartet q;
+		do {
+			q = new Quartet(r.nextInt(n), r.nextInt(n), r.nextInt(n), r.nextInt(n));
+		} while (!q.isValid());
+		return q;
+	}
+
+	/**
+	 * Describes a result and the quartets afterwards: the result, the number of
+	 * different quartets and the hash code of the set of their canonical forms, so that
+	 * a quartet with another topology is noticed too.
+	 *
+	 * @param out The result.
+	 * @param quartets The quartets.
+	 * @return The description.
+	 */
+	private static String describe(boolean[] out, ArrayList<Quartet> quartets) {
+		TreeSet<String> set = new TreeSet<>();
+		for (Quartet q : quartets) {
+			Quartet c = new Quartet(q.left1, q.left2, q.right1, q.right2);
+			c.toCanonicalForm();
+			set.add(c.toString());
+		}
+		return Arrays.toString(out) + " " + set.size() + " " + Integer.toHexString(set.hashCode());
+	}
+}
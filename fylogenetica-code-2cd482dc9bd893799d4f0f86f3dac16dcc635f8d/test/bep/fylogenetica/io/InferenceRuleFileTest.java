@@ -0,0 +1,118 @@
+package bep.fylogenetica.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import bep.fylogenetica.model.Inference;
+import bep.fylogenetica.model.Quartet;
+
+/**
+ * Tests for {@link InferenceRuleFile}. These are run from the project directory, so
+ * that <code>src/inference/inferenceRules.txt</code> can be found.
+ */
+public class InferenceRuleFileTest {
+
+	/**
+	 * The number of rules in the text rule file.
+	 */
+	private static final int RULE_COUNT = 1270;
+
+	/**
+	 * Checks that writing the rules from the text file in the binary format and
+	 * reading them back gives exactly the same rules.
+	 */
+	@Test
+	public void binaryRoundTrip() throws IOException {
+		List<Inference> text = readTextFile();
+		assertEquals(RULE_COUNT, text.size());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InferenceRuleFile.write(text, out);
+		List<Inference> binary = InferenceRuleFile.read(new ByteArrayInputStream(out.toByteArray()));
+
+		assertSameRules(text, binary);
+	}
+
+	/**
+	 * Checks that the binary rule file that is shipped as {@link InferenceRuleFile#RESOURCE}
+	 * contains the rules of the text file.
+	 */
+	@Test
+	public void resourceMatchesTextFile() throws IOException {
+		try (InputStream in = InferenceRuleFile.class.getResourceAsStream(InferenceRuleFile.RESOURCE)) {
+			assertNotNull("the binary rule file is not on the class path", in);
+			assertSameRules(readTextFile(), InferenceRuleFile.read(in));
+		}
+	}
+
+	/**
+	 * Checks that {@link Inference#read()} gives the rules of the text file.
+	 */
+	@Test
+	public void inferenceReadMatchesTextFile() throws IOException {
+		assertSameRules(readTextFile(), Inference.read());
+	}
+
+	/**
+	 * Reads the text rule file.
+	 *
+	 * @return The rules.
+	 */
+	private static List<Inference> readTextFile() throws IOException {
+		try (InputStream in = new FileInputStream(new File("src/inference/inferenceRules.txt"))) {
+			return InferenceRuleFile.readText(in);
+		}
+	}
+
+	/**
+	 * Checks that two lists contain the same rules in the same order, with the
+	 * quartets in the same order and with the same overlap values.
+	 *
+	 * @param expected The expected rules.
+	 * @param actual The rules to check.
+	 */
+	private static void assertSameRules(List<Inference> expected, List<Inference> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Inference e = expected.get(i);
+			Inference a = actual.get(i);
+			String rule = "rule " + i + " " + e;
+			assertEquals(rule, e.totalOverlap, a.totalOverlap);
+			assertSameQuartets(rule, e.input, a.input);
+			assertSameQuartets(rule, e.output, a.output);
+			for (int j = 0; j < e.input.size(); j++) {
+				assertEquals(rule, e.input.get(j).totalOverlap, a.input.get(j).totalOverlap);
+			}
+		}
+	}
+
+	/**
+	 * Checks that two lists contain the same quartets in the same order, with the
+	 * taxa in the same places.
+	 *
+	 * @param rule The rule, for the message.
+	 * @param expected The expected quartets.
+	 * @param actual The quartets to check.
+	 */
+	private static void assertSameQuartets(String rule, List<Quartet> expected, List<Quartet> actual) {
+		assertEquals(rule, expected.size(), actual.size());
+		for (int j = 0; j < expected.size(); j++) {
+			Quartet e = expected.get(j);
+			Quartet a = actual.get(j);
+			assertEquals(rule, e.left1, a.left1);
+			assertEquals(rule, e.left2, a.left2);
+			assertEquals(rule, e.right1, a.right1);
+			assertEquals(rule, e.right2, a.right2);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package bep.fylogenetica.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RuleScheduler}. These are run from the project directory, so that
+ * the rules can be read.
+ */
+public class RuleSchedulerTest {
+
+	/**
+	 * Checks the order of the rules: by number of input quartets first, and within the
+	 * same number, the rules that gave quartets by score, then the rules that weren't
+	 * tried often enough, then the rules that never gave a quartet.
+	 */
+	@Test
+	public void ordersByTier() throws Exception {
+		List<Inference> all = Inference.read();
+		Inference small = rulesWithInputSize(all, 3).get(0);
+		List<Inference> large = rulesWithInputSize(all, 4);
+		Inference neverHit = large.get(0), unknown = large.get(1), slow = large.get(2), fast = large.get(3);
+
+		RuleScheduler scheduler = new RuleScheduler(Arrays.asList(neverHit, unknown, slow, fast, small), null);
+		for (int i = 0; i < RuleScheduler.MIN_ATTEMPTS; i++) {
+			scheduler.record(neverHit, 1000, false);
+			scheduler.record(slow, 1000000, i == 0);
+			scheduler.record(fast, 1000, i % 2 == 0);
+			scheduler.record(small, 1000, false);
+		}
+		scheduler.record(unknown, 1000, true);
+
+		assertEquals(Arrays.asList(small, fast, slow, unknown, neverHit), scheduler.order());
+	}
+
+	/**
+	 * Checks that the statistics that are saved are read again by a new scheduler.
+	 */
+	@Test
+	public void saveAndLoad() throws Exception {
+		List<Inference> rules = Inference.read();
+		File file = File.createTempFile("rules", ".txt");
+		file.deleteOnExit();
+
+		RuleScheduler scheduler = new RuleScheduler(rules, file);
+		Random r = new Random(1);
+		for (Inference rule : rules) {
+			for (int i = 0; i < r.nextInt(2 * (int) RuleScheduler.MIN_ATTEMPTS); i++) {
+				scheduler.record(rule, 1 + r.nextInt(100000), r.nextInt(4) == 0);
+			}
+		}
+		assertNotEquals(rules, scheduler.order());
+		scheduler.save();
+
+		RuleScheduler loaded = new RuleScheduler(rules, file);
+		assertEquals(scheduler.order(), loaded.order());
+		for (Inference rule : rules) {
+			assertEquals(rule.toString(), scheduler.score(rule), loaded.score(rule), 0);
+		}
+	}
+
+	/**
+	 * Checks that a trie that tries the rules in the order of a scheduler gives the
+	 * same quartets as a trie in the order of the rules, also with all outputs and on
+	 * random quartets that don't come from a tree.
+	 */
+	@Test
+	public void orderDoesNotChangeQuartets() throws Exception {
+		List<Inference> rules = Inference.read();
+		RuleScheduler scheduler = new RuleScheduler(rules, null);
+		for (int k = 0; k < rules.size(); k++) {
+			for (int i = 0; i < RuleScheduler.MIN_ATTEMPTS; i++) {
+				scheduler.record(rules.get(k), 1000, i < k % 7);
+			}
+		}
+		assertNotEquals(rules, scheduler.order());
+
+		InferenceTrie plain = new InferenceTrie(rules);
+		InferenceTrie scheduled = new InferenceTrie(rules, scheduler);
+
+		for (int seed = 0; seed < 20; seed++) {
+			Random r = new Random(seed);
+			int n = 7 + seed % 4;
+			ArrayList<Quartet> quartets = new ArrayList<>();
+			while (quartets.size() < 3 * n) {
+				Quartet q = new Quartet(r.nextInt(n), r.nextInt(n), r.nextInt(n), r.nextInt(n));
+				if (q.isValid()) {
+					quartets.add(q);
+				}
+			}
+
+			for (boolean allOutputs : new boolean[]{false, true}) {
+				ArrayList<Quartet> expected = resolve(plain, n, quartets, allOutputs);
+				assertEquals("seed " + seed, expected, resolve(scheduled, n, quartets, allOutputs));
+			}
+		}
+	}
+
+	/**
+	 * Resolves all witnesses on <code>n</code> taxa with the rules with at most 4 input
+	 * quartets.
+	 */
+	private static ArrayList<Quartet> resolve(InferenceTrie trie, int n, ArrayList<Quartet> quartets, boolean allOutputs) {
+		ArrayList<Witness> witnesses = new ArrayList<>();
+		for (int a = 0; a < n; a++) {
+			for (int b = a + 1; b < n; b++) {
+				for (int c = b + 1; c < n; c++) {
+					for (int d = c + 1; d < n; d++) {
+						witnesses.add(new Witness(a, b, c, d));
+					}
+				}
+			}
+		}
+		return new WitnessResolver(trie, new QuartetIndex(quartets), 4, false, allOutputs).resolve(witnesses);
+	}
+
+	private static List<Inference> rulesWithInputSize(List<Inference> rules, int size) {
+		List<Inference> result = new ArrayList<>();
+		for (Inference rule : rules) {
+			if (rule.input.size() == size) {
+				result.add(rule);
+			}
+		}
+		return result;
+	}
+}
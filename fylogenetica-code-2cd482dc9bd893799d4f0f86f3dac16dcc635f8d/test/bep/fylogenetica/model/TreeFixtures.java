@@ -0,0 +1,64 @@
+package bep.fylogenetica.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded random trees and quartets for the tests. The results only depend on the
+ * {@link Random} that is given, so a test with a fixed seed always gets the same
+ * input.
+ */
+public class TreeFixtures {
+
+	private TreeFixtures() {
+	}
+
+	/**
+	 * Makes a random rooted binary tree on the taxa <code>0</code> to
+	 * <code>n - 1</code>. Every taxon goes to a random side of every split, until
+	 * both sides are non-empty.
+	 *
+	 * @param n The number of taxa.
+	 * @param r The random number generator.
+	 * @return The tree.
+	 */
+	public static Tree randomTree(int n, Random r) {
+		List<Integer> taxa = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			taxa.add(i);
+		}
+		return randomTree(taxa, r);
+	}
+
+	/**
+	 * Returns some of the given quartets, as the input of a reconstruction: the list
+	 * is shuffled, and a random 5 to 35 percent of it, but at least one quartet, is
+	 * taken.
+	 *
+	 * @param all The quartets, for example of a tree. This list is shuffled.
+	 * @param r The random number generator.
+	 * @return The quartets that are taken, in a new list.
+	 */
+	public static ArrayList<Quartet> someQuartets(ArrayList<Quartet> all, Random r) {
+		Collections.shuffle(all, r);
+		int count = Math.max(1, (int) (all.size() * (0.05 + 0.3 * r.nextDouble())));
+		return new ArrayList<>(all.subList(0, count));
+	}
+
+	private static Tree randomTree(List<Integer> taxa, Random r) {
+		if (taxa.size() == 1) {
+			return new Tree(taxa.get(0));
+		}
+		List<Integer> a, b;
+		do {
+			a = new ArrayList<>();
+			b = new ArrayList<>();
+			for (int taxon : taxa) {
+				(r.nextBoolean() ? a : b).add(taxon);
+			}
+		} while (a.isEmpty() || b.isEmpty());
+		return new Tree(randomTree(a, r), randomTree(b, r));
+	}
+}
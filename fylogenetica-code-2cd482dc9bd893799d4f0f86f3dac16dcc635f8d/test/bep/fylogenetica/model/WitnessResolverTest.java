@@ -0,0 +1,94 @@
+package bep.fylogenetica.model;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import bep.fylogenetica.algorithm.GF2Matrix;
+import bep.fylogenetica.algorithm.GF2MatrixDense;
+
+/**
+ * Tests for {@link WitnessResolver}. These are run from the project directory, so
+ * that the rules can be read.
+ */
+public class WitnessResolverTest {
+
+	/**
+	 * The maximum number of input quartets of the rules to use.
+	 */
+	private static final int MAX_INPUT_SIZE = 4;
+
+	/**
+	 * Resolves the witnesses of some of the quartets of random trees, as the
+	 * reconstruct tree action does, both with and without all outputs. Checks that
+	 * every quartet that is found is a quartet of the tree, and that with all outputs
+	 * no witness is left that is resolved without them. (With all outputs, sometimes
+	 * fewer witnesses are left, since the other output quartets can resolve witnesses
+	 * that no rule resolves on its own.)
+	 */
+	@Test
+	public void allOutputsResolvesTheSameWitnessesOrMore() throws Exception {
+		InferenceTrie trie = new InferenceTrie(Inference.read());
+
+		for (int seed = 0; seed < 60; seed++) {
+			Random r = new Random(seed);
+			int n = 7 + seed % 8;
+			ArrayList<Quartet> all = TreeFixtures.randomTree(n, r).getQuartets(n);
+			QuartetIndex tree = new QuartetIndex(all);
+			ArrayList<Quartet> quartets = TreeFixtures.someQuartets(all, r);
+
+			TreeSet<String> first = resolve(trie, n, quartets, false, tree, seed);
+			TreeSet<String> allOutputs = resolve(trie, n, quartets, true, tree, seed);
+
+			assertTrue("seed " + seed + ": left with all outputs " + allOutputs + ", without " + first, first.containsAll(allOutputs));
+		}
+	}
+
+	/**
+	 * Resolves the witnesses of some quartets until nothing more follows.
+	 *
+	 * @param trie The rules.
+	 * @param n The number of taxa.
+	 * @param quartets The quartets. This list is not changed.
+	 * @param allOutputs Whether to use all outputs.
+	 * @param tree The quartets of the tree, which the quartets that are found have to
+	 * be in.
+	 * @param seed The seed, for the messages.
+	 * @return The witnesses that are left, as their sorted taxa.
+	 */
+	private static TreeSet<String> resolve(InferenceTrie trie, int n, ArrayList<Quartet> quartets, boolean allOutputs, QuartetIndex tree, int seed) {
+		GF2Matrix m = new GF2MatrixDense(n);
+		for (Quartet q : quartets) {
+			m.addRowForQuartet(q);
+		}
+		m.rowReduce(false);
+
+		ArrayList<Witness> witnesses = m.findWitnesses();
+		WitnessResolver resolver = new WitnessResolver(trie, new QuartetIndex(quartets), MAX_INPUT_SIZE, false, allOutputs);
+		while (!witnesses.isEmpty()) {
+			ArrayList<Quartet> add = resolver.round(witnesses);
+			if (add.isEmpty()) {
+				break;
+			}
+			for (Quartet q : add) {
+				assertTrue("seed " + seed + ": " + q + " is not a quartet of the tree", tree.contains(q));
+				m.addRowForQuartet(q);
+			}
+			m.rowReduce(false);
+			witnesses = m.findWitnesses();
+		}
+
+		TreeSet<String> left = new TreeSet<>();
+		for (Witness w : witnesses) {
+			int[] taxa = w.taxa.clone();
+			Arrays.sort(taxa);
+			left.add(Arrays.toString(taxa));
+		}
+		return left;
+	}
+}
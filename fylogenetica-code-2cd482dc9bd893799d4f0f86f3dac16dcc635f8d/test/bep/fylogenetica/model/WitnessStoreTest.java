@@ -0,0 +1,111 @@
+package bep.fylogenetica.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link WitnessStore}.
+ */
+public class WitnessStoreTest {
+
+	/**
+	 * Checks that the ranks of all sets of four taxa below <code>n</code> are exactly
+	 * the numbers below <code>n</code> choose 4, and don't depend on the order of the
+	 * taxa.
+	 */
+	@Test
+	public void rankNumbersAllSetsWithoutGaps() {
+		int n = 20;
+		HashSet<Long> ranks = new HashSet<>();
+		for (int a = 0; a < n; a++) {
+			for (int b = a + 1; b < n; b++) {
+				for (int c = b + 1; c < n; c++) {
+					for (int d = c + 1; d < n; d++) {
+						long rank = WitnessStore.rank(new int[]{a, b, c, d});
+						assertEquals(rank, WitnessStore.rank(new int[]{d, b, a, c}));
+						assertTrue(rank >= 0 && rank < 4845);
+						assertTrue(ranks.add(rank));
+					}
+				}
+			}
+		}
+		assertEquals(4845, ranks.size());
+		assertEquals(WitnessStore.rank(new int[]{65532, 65533, 65534, 65535}) + 1, binomial(65536));
+	}
+
+	/**
+	 * Checks adding, removing and adding again, also enough witnesses to make the hash
+	 * table grow.
+	 */
+	@Test
+	public void addRemoveAndAddAgain() {
+		WitnessStore store = new WitnessStore();
+		int n = 12;
+		for (int a = 0; a < n; a++) {
+			for (int b = a + 1; b < n; b++) {
+				for (int c = b + 1; c < n; c++) {
+					for (int d = c + 1; d < n; d++) {
+						assertTrue(store.add(new Witness(a, b, c, d)));
+						assertFalse(store.add(new Witness(d, c, b, a)));
+					}
+				}
+			}
+		}
+		assertEquals(495, store.size());
+
+		Witness w = new Witness(3, 1, 7, 5);
+		assertTrue(store.contains(w));
+		assertTrue(store.remove(new Witness(1, 3, 5, 7)));
+		assertFalse(store.contains(w));
+		assertFalse(store.remove(w));
+		assertEquals(494, store.size());
+
+		assertTrue(store.add(w));
+		assertTrue(store.contains(new Witness(7, 5, 3, 1)));
+		assertEquals(495, store.size());
+
+		assertFalse(store.contains(new Witness(0, 1, 2, 12)));
+	}
+
+	/**
+	 * Checks that the queue gives the witnesses in the order in which they were added,
+	 * skips removed witnesses, and gives a witness that is added again once more.
+	 */
+	@Test
+	public void pollOrder() {
+		Witness w1 = new Witness(0, 1, 2, 3);
+		Witness w2 = new Witness(0, 1, 2, 4);
+		Witness w3 = new Witness(0, 1, 3, 4);
+		Witness w4 = new Witness(1, 2, 3, 4);
+		WitnessStore store = new WitnessStore(Arrays.asList(w1, w2, w3));
+
+		assertSame(w1, store.poll());
+		store.remove(w2);
+		store.add(w4);
+		assertSame(w3, store.poll());
+		assertSame(w4, store.poll());
+		assertNull(store.poll());
+
+		// a witness that is added again is tried again, also if it was removed while it
+		// was still in the queue
+		store.add(w2);
+		store.remove(w1);
+		store.add(w1);
+		assertSame(w2, store.poll());
+		assertSame(w1, store.poll());
+		assertNull(store.poll());
+		assertEquals(4, store.size());
+	}
+
+	private static long binomial(long n) {
+		return n * (n - 1) / 2 * (n - 2) / 3 * (n - 3) / 4;
+	}
+}